@@ -0,0 +1,52 @@
+/**
+ * Utility class with the parts of the Okapi BM25 ranking. The score of a
+ * location is the sum over the query words of
+ *
+ * <pre>
+ * idf(word) * hits * (K1 + 1) / (hits + K1 * (1 - B + B * length / averageLength))
+ * </pre>
+ *
+ * where hits is how often the word appears at the location and length is
+ * the word count of the location.
+ *
+ * @author hayde
+ */
+public class Bm25
+{
+	/**
+	 * how quickly repeated matches of a word stop adding to the score
+	 */
+	public static final double K1 = 1.2;
+
+	/**
+	 * how much the length of a location lowers its score
+	 */
+	public static final double B = 0.75;
+
+	/**
+	 * Returns the inverse document frequency of a word, which is higher
+	 * for rarer words
+	 *
+	 * @param found			number of locations the word is found in
+	 * @param documents		number of locations in the index
+	 * @return double		weight of the word
+	 */
+	public static double idf(int found, int documents)
+	{
+		return Math.log(1 + (documents - found + 0.5) / (found + 0.5));
+	}
+
+	/**
+	 * Returns the part of the score that depends on the location, which
+	 * is multiplied by the {@link #idf(int, int)} of the word
+	 *
+	 * @param hits				number of matches at the location
+	 * @param length			word count of the location
+	 * @param averageLength		average word count of all locations
+	 * @return double			weight of the matches
+	 */
+	public static double tf(int hits, int length, double averageLength)
+	{
+		return hits * (K1 + 1) / (hits + K1 * (1 - B + B * length / averageLength));
+	}
+}
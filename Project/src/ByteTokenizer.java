@@ -0,0 +1,295 @@
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Splits UTF-8 bytes in to the same words, in the same order, as reading
+ * the bytes a line at a time with {@link java.io.BufferedReader#readLine()}
+ * and splitting each line with a {@link Tokenizer}. The bytes are usually
+ * a memory mapped file, so nothing is copied or decoded for text that is
+ * plain ASCII.
+ *
+ * Every line is checked for bytes above 0x7F before it is split. ASCII
+ * lines are split straight from the bytes, since an ASCII character is
+ * either whitespace, a letter that only needs to be lowercased, or
+ * something the cleaning removes. Any other line is decoded and split by
+ * a {@link Tokenizer}, which keeps the rules that depend on the whole line.
+ * In a locale where lowercasing is not that simple every line is decoded.
+ * A line break is always an ASCII byte in UTF-8, so lines are found without
+ * decoding.
+ *
+ * Like the reader, bytes that are not valid UTF-8 throw a
+ * {@link CharacterCodingException}.
+ *
+ * @author hayde
+ */
+public class ByteTokenizer
+{
+	/**
+	 * kind of an ASCII byte that is whitespace
+	 */
+	private static final byte SPACE = 1;
+
+	/**
+	 * kind of an ASCII byte that is a letter
+	 */
+	private static final byte LETTER = 2;
+
+	/**
+	 * kind of each ASCII byte, zero for bytes the cleaning removes
+	 */
+	private static final byte[] KINDS = new byte[0x80];
+
+	static
+	{
+		for (char c = 0; c < KINDS.length; c++)
+		{
+			if (Tokenizer.isSpace(c))
+			{
+				KINDS[c] = SPACE;
+			}
+			else if ((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z'))
+			{
+				KINDS[c] = LETTER;
+			}
+		}
+	}
+
+	/**
+	 * lowercase letters of the ASCII word being read
+	 */
+	private byte[] letters;
+
+	/**
+	 * the current word when it was read from ASCII bytes
+	 */
+	private String token;
+
+	/**
+	 * splits the lines that are not ASCII
+	 */
+	private final Tokenizer tokenizer;
+
+	/**
+	 * decodes the lines that are not ASCII
+	 */
+	private final CharsetDecoder decoder;
+
+	/**
+	 * bytes being split
+	 */
+	private ByteBuffer bytes;
+
+	/**
+	 * index of the next byte to read
+	 */
+	private int position;
+
+	/**
+	 * index after the last byte to read
+	 */
+	private int end;
+
+	/**
+	 * index after the ASCII line being read, the start of the next line
+	 */
+	private int ascii;
+
+	/**
+	 * whether the current word comes from the tokenizer
+	 */
+	private boolean decoded;
+
+	/**
+	 * Initializes a tokenizer with no bytes
+	 */
+	public ByteTokenizer()
+	{
+		this.letters = new byte[64];
+		this.tokenizer = new Tokenizer();
+		this.decoder = StandardCharsets.UTF_8.newDecoder();
+		reset(ByteBuffer.allocate(0), 0, 0);
+	}
+
+	/**
+	 * Starts splitting new bytes. The range should start at the start of a
+	 * line and end at the end of one.
+	 *
+	 * @param bytes				bytes to split
+	 * @param start				index of the first byte
+	 * @param end				index after the last byte
+	 * @return ByteTokenizer	this tokenizer
+	 */
+	public ByteTokenizer reset(ByteBuffer bytes, int start, int end)
+	{
+		this.bytes = bytes;
+		this.position = start;
+		this.end = end;
+		this.ascii = start;
+		this.decoded = false;
+		tokenizer.reset("");
+		return this;
+	}
+
+	/**
+	 * Moves to the next word of the bytes
+	 *
+	 * @return boolean			whether there is another word
+	 * @throws CharacterCodingException	if a line is not valid UTF-8
+	 */
+	public boolean next() throws CharacterCodingException
+	{
+		if (decoded)
+		{
+			if (tokenizer.next())
+			{
+				return true;
+			}
+
+			decoded = false;
+		}
+
+		while (true)
+		{
+			if (position == ascii)
+			{
+				if (position >= end)
+				{
+					return false;
+				}
+
+				if (!nextLine())
+				{
+					decoded = true;
+
+					if (tokenizer.next())
+					{
+						return true;
+					}
+
+					decoded = false;
+					continue;
+				}
+			}
+
+			int length = 0;
+
+			for (; position < ascii; position++)
+			{
+				byte b = bytes.get(position);
+
+				if (KINDS[b] == SPACE)
+				{
+					if (length > 0)
+					{
+						position++;
+						break;
+					}
+				}
+				else if (KINDS[b] == LETTER)
+				{
+					if (length == letters.length)
+					{
+						letters = Arrays.copyOf(letters, length * 2);
+					}
+
+					letters[length++] = (byte) (b | 0x20);
+				}
+			}
+
+			if (length > 0)
+			{
+				token = new String(letters, 0, length, StandardCharsets.ISO_8859_1);
+				return true;
+			}
+		}
+	}
+
+	/**
+	 * Finds the end of the line starting at the current byte. An ASCII
+	 * line is left to be read from the bytes, any other line is decoded
+	 * and given to the tokenizer.
+	 *
+	 * @return boolean			whether the line is ASCII
+	 * @throws CharacterCodingException	if the line is not valid UTF-8
+	 */
+	private boolean nextLine() throws CharacterCodingException
+	{
+		int start = position;
+		int high = 0;
+		int i = start;
+
+		for (; i < end; i++)
+		{
+			byte b = bytes.get(i);
+
+			if (b == '\n' || b == '\r')
+			{
+				break;
+			}
+
+			high |= b;
+		}
+
+		// the line break is whitespace, so it is read with the line
+		ascii = Math.min(i + 1, end);
+
+		if (high >= 0 && Tokenizer.SIMPLE_CASE)
+		{
+			return true;
+		}
+
+		ByteBuffer line = bytes.duplicate();
+		line.limit(i).position(start);
+		CharBuffer chars = decoder.reset().decode(line);
+		tokenizer.reset(chars);
+		position = ascii;
+		return false;
+	}
+
+	/**
+	 * Returns the current word, which changes when {@link #next()} is called
+	 *
+	 * @return CharSequence		the current word
+	 */
+	public CharSequence token()
+	{
+		return decoded ? tokenizer.token() : token;
+	}
+
+	/**
+	 * Returns the index after the last line break in a range of bytes, so
+	 * the range can be split without splitting a line. A range with no
+	 * line break is split after its last ASCII whitespace, which only
+	 * changes the words of a line that is not ASCII.
+	 *
+	 * @param bytes				bytes to split
+	 * @param start				index of the first byte
+	 * @param end				index after the last byte
+	 * @return int				index after the break or -1 if there is none
+	 */
+	public static int lastBreak(ByteBuffer bytes, int start, int end)
+	{
+		int space = -1;
+
+		for (int i = end - 1; i >= start; i--)
+		{
+			byte b = bytes.get(i);
+
+			if (b == '\n' || b == '\r')
+			{
+				return i + 1;
+			}
+
+			if (space < 0 && b >= 0 && KINDS[b] == SPACE)
+			{
+				space = i + 1;
+			}
+		}
+
+		return space;
+	}
+}
@@ -0,0 +1,560 @@
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.Predicate;
+
+/**
+ * A thread-safe {@link InvertedIndex} without a global lock. Words are kept
+ * in a {@link ConcurrentSkipListMap}, so partial searches can still walk
+ * the words in order, and each word has its own concurrent map of
+ * postings sorted by document id.
+ *
+ * A posting is never changed once other threads can see it. Adding to a
+ * posting replaces it with a new {@link PositionList} holding the old and
+ * new positions, so searches read whole postings without ever waiting on
+ * a writer. Word counts are updated before the postings that use them,
+ * so a search never finds a posting of a location with no word count.
+ *
+ * Replacing a posting copies it, which is cheap when a whole document is
+ * added with {@link #addAll(InvertedIndex)} but grows with the posting
+ * when positions are added one at a time with {@link #addIndex}.
+ *
+ * @see ThreadSafeInvertedIndex
+ * @author hayde
+ */
+public class ConcurrentInvertedIndex extends InvertedIndex
+{
+	/**
+	 * postings of every word, sorted by word and then by document id
+	 */
+	private final ConcurrentSkipListMap<String, ConcurrentSkipListMap<Integer, PositionList>> index;
+
+	/**
+	 * word count of each document id
+	 */
+	private final ConcurrentHashMap<Integer, Integer> counts;
+
+	/**
+	 * location of each document id
+	 */
+	private final List<String> locations;
+
+	/**
+	 * document id of each location
+	 */
+	private final ConcurrentHashMap<String, Integer> locationIds;
+
+	/**
+	 * Initializes an empty concurrent index.
+	 */
+	public ConcurrentInvertedIndex()
+	{
+		super();
+		this.index = new ConcurrentSkipListMap<>();
+		this.counts = new ConcurrentHashMap<>();
+		this.locations = Collections.synchronizedList(new ArrayList<String>());
+		this.locationIds = new ConcurrentHashMap<>();
+	}
+
+	/**
+	 * Returns the document id of a location, assigning the next id if the
+	 * location is new. Only new locations take the lock.
+	 *
+	 * @param location		location to look up
+	 * @return id			document id of the location
+	 */
+	private int assignId(String location)
+	{
+		Integer id = locationIds.get(location);
+
+		if (id == null)
+		{
+			synchronized (locations)
+			{
+				id = locationIds.get(location);
+
+				if (id == null)
+				{
+					id = locations.size();
+					locations.add(location);
+					locationIds.put(location, id);
+				}
+			}
+		}
+
+		return id;
+	}
+
+	/**
+	 * Returns the postings of a word, creating them if the word is new
+	 *
+	 * @param word			word to look up
+	 * @return postings		postings of the word
+	 */
+	private ConcurrentSkipListMap<Integer, PositionList> postings(String word)
+	{
+		ConcurrentSkipListMap<Integer, PositionList> postings = index.get(word);
+		return postings != null ? postings : index.computeIfAbsent(word, key -> new ConcurrentSkipListMap<>());
+	}
+
+	/**
+	 * Combines two postings of the same word and location in to a new one,
+	 * leaving both unchanged for any search still reading them
+	 *
+	 * @param old				current posting
+	 * @param added				positions to add
+	 * @return PositionList		new posting holding both
+	 */
+	private static PositionList combine(PositionList old, PositionList added)
+	{
+		PositionList combined = new PositionList(old);
+		combined.addAll(added);
+		return combined;
+	}
+
+	/**
+	 * Adds a single position by replacing the posting, without locking.
+	 *
+	 * @param word		word to be added
+	 * @param pretty	file to be added
+	 * @param num 		number to be added for position
+	 */
+	@Override
+	public void addIndex(String word, String pretty, int num)
+	{
+		int id = assignId(pretty);
+		counts.merge(id, num, Math::max);
+		postings(word).merge(id, new PositionList(new int[] { num }), ConcurrentInvertedIndex::combine);
+		changed();
+	}
+
+	/**
+	 * Adds every word of a document one posting at a time, without locking.
+	 *
+	 * @param location		location of the document
+	 * @param words			positions of each word in the document
+	 * @param length		word count of the document
+	 */
+	@Override
+	public void addDocument(String location, Map<String, PositionList> words, int length)
+	{
+		if (words.isEmpty())
+		{
+			return;
+		}
+
+		int id = assignId(location);
+		counts.merge(id, length, Math::max);
+
+		for (Map.Entry<String, PositionList> entry : words.entrySet())
+		{
+			postings(entry.getKey()).merge(id, entry.getValue(), ConcurrentInvertedIndex::combine);
+		}
+
+		changed();
+	}
+
+	/**
+	 * Merges a local index one posting at a time, without locking.
+	 *
+	 * @param local			foreign index to be added
+	 */
+	@Override
+	public void addAll(InvertedIndex local)
+	{
+		addAll(local, word -> true);
+	}
+
+	/**
+	 * Merges some words of a local index one posting at a time, without
+	 * locking. The local index must not be changed afterwards, since its
+	 * postings are shared until another thread adds to them.
+	 *
+	 * @param local			foreign index to be added
+	 * @param words			which of the words to add
+	 */
+	@Override
+	public void addAll(InvertedIndex local, Predicate<String> words)
+	{
+		for (Map.Entry<String, Integer> entry : local.getCount().entrySet())
+		{
+			counts.merge(assignId(entry.getKey()), entry.getValue(), Math::max);
+		}
+
+		local.forEachPosting((word, location, positions) ->
+		{
+			if (words.test(word))
+			{
+				postings(word).merge(assignId(location), positions, ConcurrentInvertedIndex::combine);
+			}
+		});
+
+		changed();
+	}
+
+	@Override
+	public void forEachPosting(PostingConsumer consumer)
+	{
+		for (Map.Entry<String, ConcurrentSkipListMap<Integer, PositionList>> word : index.entrySet())
+		{
+			for (Map.Entry<Integer, PositionList> entry : word.getValue().entrySet())
+			{
+				consumer.accept(word.getKey(), locations.get(entry.getKey()), entry.getValue());
+			}
+		}
+	}
+
+	@Override
+	public void countMatches(Collection<String> queries, boolean exact, Map<String, Integer> matches)
+	{
+		for (String query : queries)
+		{
+			if (exact)
+			{
+				ConcurrentSkipListMap<Integer, PositionList> postings = index.get(query);
+
+				if (postings != null)
+				{
+					countHelper(postings, matches);
+				}
+			}
+			else
+			{
+				for (String word : matchingWords(query, false))
+				{
+					countHelper(index.get(word), matches);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Helper function that adds the matches of a word to the totals
+	 *
+	 * @param postings			postings of the word
+	 * @param matches			map of location to matches that is added to
+	 */
+	private void countHelper(ConcurrentSkipListMap<Integer, PositionList> postings, Map<String, Integer> matches)
+	{
+		for (Map.Entry<Integer, PositionList> entry : postings.entrySet())
+		{
+			matches.merge(locations.get(entry.getKey()), entry.getValue().size(), Integer::sum);
+		}
+	}
+
+	@Override
+	ArrayList<Result> findResults(Collection<String> queries, boolean exact)
+	{
+		return accumulate(queries, exact).results(locations::get, counts::get);
+	}
+
+	@Override
+	ArrayList<Result> findTop(Collection<String> queries, boolean exact, int k)
+	{
+		return accumulate(queries, exact).top(k, locations::get, counts::get);
+	}
+
+	@Override
+	List<String> matchingWords(String query, boolean exact)
+	{
+		if (exact)
+		{
+			return index.containsKey(query) ? List.of(query) : List.of();
+		}
+
+		ArrayList<String> words = new ArrayList<>();
+		int max = getMaxExpansions();
+
+		for (String word : index.tailMap(query).keySet())
+		{
+			if (!word.startsWith(query) || words.size() == max)
+			{
+				break;
+			}
+			words.add(word);
+		}
+
+		return words;
+	}
+
+	@Override
+	void addHits(String word, int[] ids, int[] counts)
+	{
+		ConcurrentSkipListMap<Integer, PositionList> postings = index.get(word);
+
+		if (postings == null)
+		{
+			return;
+		}
+
+		for (int i = 0; i < ids.length; i++)
+		{
+			PositionList list = postings.get(ids[i]);
+
+			if (list != null)
+			{
+				counts[i] += list.size();
+			}
+		}
+	}
+
+	@Override
+	void scatter(String word, int[] queries, ScoreAccumulator[] matches)
+	{
+		ConcurrentSkipListMap<Integer, PositionList> postings = index.get(word);
+
+		if (postings == null)
+		{
+			return;
+		}
+
+		// the map can grow while it is read, so its size is not known up front 
+		ArrayList<Integer> ids = new ArrayList<>();
+		ArrayList<Integer> hits = new ArrayList<>();
+
+		for (Map.Entry<Integer, PositionList> entry : postings.entrySet())
+		{
+			ids.add(entry.getKey());
+			hits.add(entry.getValue().size());
+		}
+
+		scatter(ids.stream().mapToInt(Integer::intValue).toArray(), hits.stream().mapToInt(Integer::intValue).toArray(), 0, ids.size(), queries, matches);
+	}
+
+	@Override
+	int frequency(String word)
+	{
+		ConcurrentSkipListMap<Integer, PositionList> postings = index.get(word);
+		return postings == null ? 0 : postings.size();
+	}
+
+	@Override
+	int[] documents(String word)
+	{
+		ConcurrentSkipListMap<Integer, PositionList> postings = index.get(word);
+
+		if (postings == null)
+		{
+			return new int[0];
+		}
+
+		return postings.keySet().stream().mapToInt(Integer::intValue).toArray();
+	}
+
+	@Override
+	int[] positions(String word, int id)
+	{
+		ConcurrentSkipListMap<Integer, PositionList> postings = index.get(word);
+		PositionList list = postings == null ? null : postings.get(id);
+		return list == null ? new int[0] : PositionList.toArray(list);
+	}
+
+	@Override
+	int wordCount(int id)
+	{
+		return counts.getOrDefault(id, 0);
+	}
+
+	/**
+	 * Adds up the matches of the queries by document id
+	 *
+	 * @param queries			Collection of queries to be searched
+	 * @param exact				boolean to know whether we are doing exact
+	 * @return ScoreAccumulator	matches of each document id
+	 */
+	private ScoreAccumulator accumulate(Collection<String> queries, boolean exact)
+	{
+		ScoreAccumulator matches = ScoreAccumulator.get(locations.size());
+
+		for (String query : queries)
+		{
+			for (String word : matchingWords(query, exact))
+			{
+				for (Map.Entry<Integer, PositionList> entry : index.get(word).entrySet())
+				{
+					matches.add(entry.getKey(), entry.getValue().size());
+				}
+			}
+		}
+
+		return matches;
+	}
+
+	@Override
+	public Map<String, Integer> getCount()
+	{
+		TreeMap<String, Integer> named = new TreeMap<>();
+
+		for (Map.Entry<Integer, Integer> entry : counts.entrySet())
+		{
+			named.put(locations.get(entry.getKey()), entry.getValue());
+		}
+
+		return Collections.unmodifiableMap(named);
+	}
+
+	@Override
+	public Set<String> getLocations()
+	{
+		return getCount().keySet();
+	}
+
+	@Override
+	public int getLocationId(String location)
+	{
+		return locationIds.getOrDefault(location, -1);
+	}
+
+	@Override
+	public String getLocation(int id)
+	{
+		return locations.get(id);
+	}
+
+	@Override
+	public Set<String> getWords()
+	{
+		return Collections.unmodifiableSet(index.keySet());
+	}
+
+	@Override
+	public Set<Integer> getPositions(String word, String location)
+	{
+		ConcurrentSkipListMap<Integer, PositionList> postings = index.get(word);
+		Integer id = locationIds.get(location);
+
+		if (postings == null || id == null || !postings.containsKey(id))
+		{
+			return Collections.emptySet();
+		}
+
+		return Collections.unmodifiableSet(postings.get(id));
+	}
+
+	@Override
+	public int numLocation(String word, String file)
+	{
+		return getPositions(word, file).size();
+	}
+
+	@Override
+	public Set<String> getLocations(String word)
+	{
+		ConcurrentSkipListMap<Integer, PositionList> postings = index.get(word);
+
+		if (postings == null)
+		{
+			return Collections.emptySet();
+		}
+
+		TreeSet<String> named = new TreeSet<>();
+
+		for (int id : postings.keySet())
+		{
+			named.add(locations.get(id));
+		}
+
+		return Collections.unmodifiableSet(named);
+	}
+
+	@Override
+	public void toJson(Path path) throws IOException
+	{
+		freeze().toJson(path);
+	}
+
+	/**
+	 * Creates a snapshot of the index. Writers are not stopped, so
+	 * postings added while the snapshot is taken may or may not be in it.
+	 *
+	 * @return FrozenInvertedIndex		snapshot of this index
+	 */
+	@Override
+	public FrozenInvertedIndex freeze()
+	{
+		String[] names;
+
+		synchronized (locations)
+		{
+			names = locations.toArray(new String[0]);
+		}
+
+		// copy the postings first, the maps can keep growing while we count
+		ArrayList<String> terms = new ArrayList<>();
+		ArrayList<int[]> termDocs = new ArrayList<>();
+		ArrayList<PositionList[]> termLists = new ArrayList<>();
+		int postings = 0;
+		long bytes = 0;
+
+		for (Map.Entry<String, ConcurrentSkipListMap<Integer, PositionList>> word : index.entrySet())
+		{
+			ArrayList<Integer> docs = new ArrayList<>();
+			ArrayList<PositionList> lists = new ArrayList<>();
+
+			for (Map.Entry<Integer, PositionList> entry : word.getValue().entrySet())
+			{
+				// skip documents that were added after the locations were copied
+				if (entry.getKey() < names.length)
+				{
+					docs.add(entry.getKey());
+					lists.add(entry.getValue());
+					bytes += entry.getValue().encodedLength();
+				}
+			}
+
+			if (!docs.isEmpty())
+			{
+				terms.add(word.getKey());
+				termDocs.add(docs.stream().mapToInt(Integer::intValue).toArray());
+				termLists.add(lists.toArray(new PositionList[0]));
+				postings += docs.size();
+			}
+		}
+
+		int[] termStart = new int[terms.size() + 1];
+		int[] docs = new int[postings];
+		int[] hits = new int[postings];
+		int[] positionStart = new int[postings + 1];
+		byte[] positions = new byte[Math.toIntExact(bytes)];
+
+		int posting = 0;
+		int offset = 0;
+
+		for (int term = 0; term < terms.size(); term++)
+		{
+			termStart[term] = posting;
+			int[] ids = termDocs.get(term);
+			PositionList[] lists = termLists.get(term);
+
+			for (int i = 0; i < ids.length; i++)
+			{
+				docs[posting] = ids[i];
+				hits[posting] = lists[i].size();
+				positionStart[posting] = offset;
+				offset += lists[i].copyTo(positions, offset);
+				posting++;
+			}
+		}
+		termStart[terms.size()] = posting;
+		positionStart[posting] = offset;
+
+		int[] lengths = new int[names.length];
+
+		for (int id = 0; id < lengths.length; id++)
+		{
+			lengths[id] = counts.getOrDefault(id, 0);
+		}
+
+		return limited(new FrozenInvertedIndex(terms.toArray(new String[0]), termStart, docs, hits, positionStart, positions,
+				names, lengths));
+	}
+}
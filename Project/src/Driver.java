@@ -1,7 +1,10 @@
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.time.Duration;
 import java.time.Instant;
+import java.util.TreeSet;
 
 /**
  * Class responsible for running this project based on the provided command-line
@@ -31,6 +34,37 @@ public class Driver {
 		WorkQueue que = null;
 		WebCrawler crawler = null;
 
+		// Words are stemmed through a cache shared by every thread, a size 
+		// of zero stems every word 
+		try
+		{
+			if (parser.hasFlag("-stemcache"))
+			{
+				StemCache.SHARED.setCapacity(Integer.parseInt(parser.getString("-stemcache", Integer.toString(StemCache.DEFAULT))));
+			}
+		}
+		catch (NumberFormatException e)
+		{
+			System.out.println("Unable to size the stem cache with " + parser.getString("-stemcache"));
+		}
+
+		int shards = ShardedInvertedIndex.DEFAULT;
+		try
+		{
+			if (parser.hasValue("-shards"))
+			{
+				shards = Integer.parseInt(parser.getString("-shards"));
+				if (shards < 1)
+				{
+					shards = ShardedInvertedIndex.DEFAULT;
+				}
+			}
+		}
+		catch (NumberFormatException e)
+		{
+			System.out.println("Unable to split the index in to " + parser.getString("-shards") + " shards");
+		}
+
 		try
 		{
 			if (parser.hasFlag("-threads"))
@@ -44,18 +78,31 @@ public class Driver {
 						threads = 5;
 					}
 				}
-				ThreadSafeInvertedIndex threadIndex = new ThreadSafeInvertedIndex();
+				// A segmented index can be searched while it is still being built, 
+				// a sharded index lets threads add to different shards at once 
+				// and a concurrent index has no lock at all 
+				InvertedIndex threadIndex = new ThreadSafeInvertedIndex();
+				if (parser.hasFlag("-concurrent"))
+				{
+					threadIndex = new ConcurrentInvertedIndex();
+				}
+				else if (parser.hasFlag("-segmented"))
+				{
+					threadIndex = new SegmentedInvertedIndex();
+				}
+				else if (parser.hasFlag("-shards"))
+				{
+					threadIndex = new ShardedInvertedIndex(shards);
+				}
 				index = threadIndex;
 				que = new WorkQueue(threads);
-				builder = new MultiThreadedBuilder(que, threadIndex);
-				queryClass = new ThreadSafeQuery(threadIndex, que);
+				builder = new MultiThreadedBuilder(que, threadIndex, parser.hasFlag("-reduce"));
 				crawler = new WebCrawler(threadIndex, que);
 			}
 			else
 			{
 				index = new InvertedIndex();
 				builder = new InvertedIndexBuilder(index);
-				queryClass = new QueryParser(index);
 				crawler = new WebCrawler((ThreadSafeInvertedIndex) index, new WorkQueue());
 			}
 		}
@@ -66,7 +113,22 @@ public class Driver {
 		
 		try 
 		{
-			if (parser.hasFlag("-url"))
+			// A saved index replaces crawling and building, it can also be 
+			// searched straight from the file with -mmap 
+			if (parser.hasFlag("-load"))
+			{
+				Path loadPath = parser.getPath("-load", Path.of("index.bin"));
+				index = parser.hasFlag("-mmap") ? new MappedInvertedIndex(loadPath) : FrozenInvertedIndex.load(loadPath);
+			}
+		}
+		catch (IOException e)
+		{
+			System.out.println("Unable to load the index from " + parser.getString("-load", "index.bin"));
+		}
+		
+		try 
+		{
+			if (parser.hasFlag("-url") && !parser.hasFlag("-load"))
 			{
 				String seed = parser.getString("-url");
 				if (seed == null)
@@ -87,7 +149,7 @@ public class Driver {
 		try 
 		{
 			Path inputPath = null;
-			if ((inputPath = parser.getPath("-path")) != null) 
+			if ((inputPath = parser.getPath("-path")) != null && !parser.hasFlag("-load")) 
 			{
 				builder.build(inputPath);
 			}
@@ -97,6 +159,70 @@ public class Driver {
 			System.out.println("We were unable to write to the json map with " + parser.getString("-path"));
 		}
 		
+		// Building is done, from here on the index is only read 
+		if (index instanceof SegmentedInvertedIndex)
+		{
+			((SegmentedInvertedIndex) index).close();
+		}
+		if (!parser.hasFlag("-load") && index != null)
+		{
+			// a reduction tree build is already frozen 
+			index = (builder != null) ? builder.freeze() : index.freeze();
+		}
+		if (parser.hasFlag("-stemcache"))
+		{
+			System.out.println("Stem cache: " + StemCache.SHARED);
+		}
+		// Short prefixes can match a large part of the index, so partial 
+		// searches can be limited to the first matching words in sorted order 
+		try
+		{
+			if (parser.hasFlag("-expansions"))
+			{
+				index.setMaxExpansions(Integer.parseInt(parser.getString("-expansions", Integer.toString(Integer.MAX_VALUE))));
+			}
+		}
+		catch (NumberFormatException e)
+		{
+			System.out.println("Unable to limit the expansions to " + parser.getString("-expansions"));
+		}
+		// Very common words are dropped from queries with more postings 
+		try
+		{
+			if (parser.hasFlag("-budget"))
+			{
+				index.setPostingBudget(Long.parseLong(parser.getString("-budget", Long.toString(Long.MAX_VALUE))));
+			}
+		}
+		catch (NumberFormatException e)
+		{
+			System.out.println("Unable to limit the postings to " + parser.getString("-budget"));
+		}
+		try
+		{
+			if (parser.hasFlag("-bm25"))
+			{
+				index.useBm25(true);
+			}
+		}
+		catch (UnsupportedOperationException e)
+		{
+			System.out.println("Unable to rank with BM25, " + e.getMessage());
+		}
+		queryClass = (que != null) ? new ThreadSafeQuery(index, que) : new QueryParser(index);
+		
+		try
+		{
+			if (parser.hasFlag("-save"))
+			{
+				index.save(parser.getPath("-save", Path.of("index.bin")));
+			}
+		}
+		catch (IOException e)
+		{
+			System.out.println("Unable to save the index to " + parser.getString("-save", "index.bin"));
+		}
+		
 		try
 		{
 			// Check to see if we output to file  
@@ -126,11 +252,43 @@ public class Driver {
 			}
 		}
 		
+		try
+		{
+			// Prints how each query would be searched, for debugging 
+			if (parser.hasFlag("-plan") && parser.hasFlag("-query"))
+			{
+				for (String line : Files.readAllLines(parser.getPath("-query"), StandardCharsets.UTF_8))
+				{
+					TreeSet<String> stems = TextFileStemmer.stems(QueryInterface.AND.matcher(line).replaceAll(" "));
+					
+					if (!stems.isEmpty() && ProximityQuery.parse(line) == null)
+					{
+						System.out.println(String.join(" ", stems) + ": " + index.plan(stems, parser.hasFlag("-exact")));
+					}
+				}
+			}
+		}
+		catch (IOException e)
+		{
+			System.out.println("Unable to plan the queries of " + parser.getString("-query"));
+		}
+		
 		try 
 		{
-			if (parser.hasFlag("-query"))
+			if (parser.hasFlag("-query") && parser.hasFlag("-stream") && parser.hasFlag("-results") && queryClass instanceof ThreadSafeQuery)
+			{
+				// the results are written while searching and not kept 
+				((ThreadSafeQuery) queryClass).streamQueryJson(parser.getPath("-query"), parser.getPath("-results", Path.of("results.json")), 
+						parser.hasFlag("-exact"), parser.hasFlag("-and"));
+			}
+			else if (parser.hasFlag("-query") && parser.hasFlag("-batch"))
+			{
+				// lines that share words are searched together 
+				queryClass.batchQuery(parser.getPath("-query"), parser.hasFlag("-exact"), parser.hasFlag("-and"));
+			}
+			else if (parser.hasFlag("-query"))
 			{
-				queryClass.query(parser.getPath("-query"), parser.hasFlag("-exact"));
+				queryClass.query(parser.getPath("-query"), parser.hasFlag("-exact"), parser.hasFlag("-and"));
 			}
 			
 		}
@@ -141,7 +299,7 @@ public class Driver {
 		
 		try 
 		{
-			if (parser.hasFlag("-results"))
+			if (parser.hasFlag("-results") && !(parser.hasFlag("-stream") && parser.hasFlag("-query") && queryClass instanceof ThreadSafeQuery))
 			{
 				queryClass.writeQueryJson(parser.getPath("-results", Path.of("results.json")));
 			}
@@ -0,0 +1,1179 @@
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Predicate;
+
+/**
+ * Read-only snapshot of an {@link InvertedIndex} created by
+ * {@link InvertedIndex#freeze()} once building is finished. The words are
+ * kept in one sorted array and the postings of every word are stored next
+ * to each other in flat arrays, so the snapshot is cheap to search and
+ * needs no locking since it never changes.
+ *
+ * The postings of the word at {@code terms[t]} are the entries
+ * {@code termStart[t]} up to {@code termStart[t + 1]} of {@code docs} and
+ * {@code hits}. The positions of posting {@code p} are the variable byte
+ * encoded bytes starting at {@code positionStart[p]}, see
+ * {@link PositionList}.
+ *
+ * @author hayde
+ * @see InvertedIndex
+ */
+public class FrozenInvertedIndex extends InvertedIndex
+{
+	/**
+	 * sorted array of every word in the index
+	 */
+	private final String[] terms;
+
+	/**
+	 * offset of the first posting of each word, with one extra entry at the end
+	 */
+	private final int[] termStart;
+
+	/**
+	 * document id of each posting, sorted by id within each word
+	 */
+	private final int[] docs;
+
+	/**
+	 * number of positions of each posting
+	 */
+	private final int[] hits;
+
+	/**
+	 * offset of the encoded positions of each posting, with one extra entry at the end
+	 */
+	private final int[] positionStart;
+
+	/**
+	 * encoded positions of every posting
+	 */
+	private final byte[] positions;
+
+	/**
+	 * location of each document id
+	 */
+	private final String[] locations;
+
+	/**
+	 * word count of each document id
+	 */
+	private final int[] lengths;
+
+	/**
+	 * document ids sorted by their location
+	 */
+	private final int[] byName;
+
+	/**
+	 * prefix trie over the words, built by the first partial search
+	 */
+	private volatile PrefixTrie trie;
+
+	/**
+	 * average word count of the locations
+	 */
+	private final double averageLength;
+
+	/**
+	 * whether searches rank with BM25
+	 */
+	private volatile boolean bm25;
+
+	/**
+	 * highest BM25 score each word gives any location, computed by the
+	 * first BM25 search
+	 */
+	private volatile double[] maxScores;
+
+	/**
+	 * number of postings scored by BM25 searches, to measure the pruning
+	 */
+	private final LongAdder scored;
+
+	/**
+	 * Constructor for the snapshot, the arrays are used as is and must
+	 * not be changed afterwards.
+	 *
+	 * @param terms				sorted words
+	 * @param termStart			posting offset of each word
+	 * @param docs				document id of each posting
+	 * @param hits				number of positions of each posting
+	 * @param positionStart		encoded position offset of each posting
+	 * @param positions			encoded positions
+	 * @param locations			location of each document id
+	 * @param lengths			word count of each document id
+	 */
+	FrozenInvertedIndex(String[] terms, int[] termStart, int[] docs, int[] hits,
+			int[] positionStart, byte[] positions, String[] locations, int[] lengths)
+	{
+		this(terms, termStart, docs, hits, positionStart, positions, locations, lengths, sortByName(locations));
+	}
+
+	/**
+	 * Constructor for the snapshot when the ids sorted by location are
+	 * already known, for example when loading an {@link IndexFile}.
+	 *
+	 * @param terms				sorted words
+	 * @param termStart			posting offset of each word
+	 * @param docs				document id of each posting
+	 * @param hits				number of positions of each posting
+	 * @param positionStart		encoded position offset of each posting
+	 * @param positions			encoded positions
+	 * @param locations			location of each document id
+	 * @param lengths			word count of each document id
+	 * @param byName			document ids sorted by location
+	 */
+	FrozenInvertedIndex(String[] terms, int[] termStart, int[] docs, int[] hits,
+			int[] positionStart, byte[] positions, String[] locations, int[] lengths, int[] byName)
+	{
+		super();
+		this.terms = terms;
+		this.termStart = termStart;
+		this.docs = docs;
+		this.hits = hits;
+		this.positionStart = positionStart;
+		this.positions = positions;
+		this.locations = locations;
+		this.lengths = lengths;
+		this.byName = byName;
+		this.averageLength = Math.max(Arrays.stream(lengths).average().orElse(1), 1);
+		this.bm25 = false;
+		this.scored = new LongAdder();
+	}
+
+	/**
+	 * Returns the document ids sorted by their location
+	 *
+	 * @param locations		location of each document id
+	 * @return int[]		sorted document ids
+	 */
+	private static int[] sortByName(String[] locations)
+	{
+		Integer[] sorted = new Integer[locations.length];
+
+		for (int i = 0; i < sorted.length; i++)
+		{
+			sorted[i] = i;
+		}
+
+		Arrays.sort(sorted, (a, b) -> locations[a].compareTo(locations[b]));
+		int[] byName = new int[sorted.length];
+
+		for (int i = 0; i < sorted.length; i++)
+		{
+			byName[i] = sorted[i];
+		}
+
+		return byName;
+	}
+
+	/**
+	 * Combines two snapshots in to a new one with a sorted merge of their
+	 * words, without going back through the nested maps of an
+	 * {@link InvertedIndex}. The locations of both are combined by name and
+	 * the positions of a location that appears in both are merged. The word
+	 * count of a location is the larger of the two, since each snapshot
+	 * only holds part of the positions of a document split between them.
+	 * {@link InvertedIndex#addAll(InvertedIndex)} combines counts the same way.
+	 *
+	 * @param a							first snapshot
+	 * @param b							second snapshot
+	 * @return FrozenInvertedIndex		snapshot with the contents of both
+	 */
+	static FrozenInvertedIndex merge(FrozenInvertedIndex a, FrozenInvertedIndex b)
+	{
+		HashMap<String, Integer> ids = new HashMap<>();
+		ArrayList<String> names = new ArrayList<>();
+		int[] aIds = remap(a.locations, ids, names);
+		int[] bIds = remap(b.locations, ids, names);
+
+		int[] lengths = new int[names.size()];
+
+		for (int i = 0; i < aIds.length; i++)
+		{
+			lengths[aIds[i]] = Math.max(lengths[aIds[i]], a.lengths[i]);
+		}
+
+		for (int i = 0; i < bIds.length; i++)
+		{
+			lengths[bIds[i]] = Math.max(lengths[bIds[i]], b.lengths[i]);
+		}
+
+		// merged postings never need more room than both inputs together
+		int postings = a.docs.length + b.docs.length;
+		String[] terms = new String[a.terms.length + b.terms.length];
+		int[] termStart = new int[terms.length + 1];
+		int[] docs = new int[postings];
+		int[] hits = new int[postings];
+		int[] positionStart = new int[postings + 1];
+		byte[] positions = new byte[Math.addExact(a.positions.length, b.positions.length)];
+
+		int i = 0;
+		int j = 0;
+		int term = 0;
+		int posting = 0;
+		int offset = 0;
+
+		while (i < a.terms.length || j < b.terms.length)
+		{
+			int compare = i == a.terms.length ? 1 : j == b.terms.length ? -1 : a.terms[i].compareTo(b.terms[j]);
+			int[] fromA = compare <= 0 ? a.postings(i++, aIds) : new int[0];
+			int[] fromB = compare >= 0 ? b.postings(j++, bIds) : new int[0];
+
+			terms[term] = compare <= 0 ? a.terms[i - 1] : b.terms[j - 1];
+			termStart[term++] = posting;
+
+			int x = 0;
+			int y = 0;
+
+			while (x < fromA.length || y < fromB.length)
+			{
+				int idA = x < fromA.length ? aIds[a.docs[fromA[x]]] : Integer.MAX_VALUE;
+				int idB = y < fromB.length ? bIds[b.docs[fromB[y]]] : Integer.MAX_VALUE;
+
+				docs[posting] = Math.min(idA, idB);
+				positionStart[posting] = offset;
+
+				if (idA < idB)
+				{
+					hits[posting] = a.hits[fromA[x]];
+					offset = a.copyPositions(fromA[x++], positions, offset);
+				}
+				else if (idB < idA)
+				{
+					hits[posting] = b.hits[fromB[y]];
+					offset = b.copyPositions(fromB[y++], positions, offset);
+				}
+				else
+				{
+					PositionList list = new PositionList(a.decodePositions(fromA[x++]));
+					list.addAll(new PositionList(b.decodePositions(fromB[y++])));
+					hits[posting] = list.size();
+					offset += list.copyTo(positions, offset);
+				}
+
+				posting++;
+			}
+		}
+
+		termStart[term] = posting;
+		positionStart[posting] = offset;
+
+		return new FrozenInvertedIndex(Arrays.copyOf(terms, term), Arrays.copyOf(termStart, term + 1),
+				Arrays.copyOf(docs, posting), Arrays.copyOf(hits, posting), Arrays.copyOf(positionStart, posting + 1),
+				Arrays.copyOf(positions, offset), names.toArray(new String[0]), lengths);
+	}
+
+	/**
+	 * Assigns merged document ids to locations by name
+	 *
+	 * @param locations		locations to assign ids to
+	 * @param ids			ids assigned so far by location
+	 * @param names			locations by id assigned so far
+	 * @return int[]		merged id of each of the locations
+	 */
+	private static int[] remap(String[] locations, HashMap<String, Integer> ids, ArrayList<String> names)
+	{
+		int[] remapped = new int[locations.length];
+
+		for (int i = 0; i < locations.length; i++)
+		{
+			Integer id = ids.get(locations[i]);
+
+			if (id == null)
+			{
+				id = names.size();
+				ids.put(locations[i], id);
+				names.add(locations[i]);
+			}
+
+			remapped[i] = id;
+		}
+
+		return remapped;
+	}
+
+	/**
+	 * Returns the postings of a word sorted by their merged document id
+	 *
+	 * @param term			index of the word
+	 * @param remapped		merged id of each of our document ids
+	 * @return int[]		offsets of the postings of the word
+	 */
+	private int[] postings(int term, int[] remapped)
+	{
+		Integer[] sorted = new Integer[termStart[term + 1] - termStart[term]];
+
+		for (int p = 0; p < sorted.length; p++)
+		{
+			sorted[p] = termStart[term] + p;
+		}
+
+		Arrays.sort(sorted, (x, y) -> Integer.compare(remapped[docs[x]], remapped[docs[y]]));
+		int[] offsets = new int[sorted.length];
+
+		for (int p = 0; p < sorted.length; p++)
+		{
+			offsets[p] = sorted[p];
+		}
+
+		return offsets;
+	}
+
+	/**
+	 * Copies the encoded positions of a posting
+	 *
+	 * @param posting		offset of the posting
+	 * @param dest			array to copy in to
+	 * @param offset		offset of the destination to start at
+	 * @return int			offset after the copied positions
+	 */
+	private int copyPositions(int posting, byte[] dest, int offset)
+	{
+		int length = positionStart[posting + 1] - positionStart[posting];
+		System.arraycopy(positions, positionStart[posting], dest, offset, length);
+		return offset + length;
+	}
+
+	/**
+	 * Decodes the positions of a posting
+	 *
+	 * @param posting		offset of the posting
+	 * @return int[]		positions in increasing order
+	 */
+	private int[] decodePositions(int posting)
+	{
+		return PositionList.decode(positions, positionStart[posting], hits[posting]);
+	}
+
+	/**
+	 * Returns the number of postings in the snapshot, used to compare
+	 * the size of snapshots
+	 *
+	 * @return int			number of postings
+	 */
+	int numPostings()
+	{
+		return docs.length;
+	}
+
+	/**
+	 * Returns the index of a word in our sorted terms or -1
+	 *
+	 * @param word			word to find
+	 * @return int			index of the word or -1
+	 */
+	private int findTerm(String word)
+	{
+		int found = Arrays.binarySearch(terms, word);
+		return found < 0 ? -1 : found;
+	}
+
+	/**
+	 * Returns the words a partial search query expands to, using the
+	 * prefix trie to find the range of matching words
+	 *
+	 * @param query			prefix to expand
+	 * @return int[]		indexes of the matching words, at most {@link #getMaxExpansions()}
+	 */
+	private int[] expand(String query)
+	{
+		PrefixTrie prefixes = trie;
+
+		if (prefixes == null)
+		{
+			// building the trie twice by accident is harmless
+			prefixes = new PrefixTrie(terms);
+			trie = prefixes;
+		}
+
+		int[] range = prefixes.range(query);
+		int[] expanded = new int[Math.min(range[1] - range[0], getMaxExpansions())];
+		Arrays.setAll(expanded, i -> range[0] + i);
+		return expanded;
+	}
+
+	/**
+	 * Returns the posting of a word at a location or -1
+	 *
+	 * @param word			word to find
+	 * @param location		location to find
+	 * @return int			offset of the posting or -1
+	 */
+	private int findPosting(String word, String location)
+	{
+		int term = findTerm(word);
+		int id = getLocationId(location);
+
+		if (term < 0 || id < 0)
+		{
+			return -1;
+		}
+
+		return findPosting(term, id);
+	}
+
+	/**
+	 * Returns the posting of a term at a document id or -1
+	 *
+	 * @param term			index of the word
+	 * @param id			document id to find
+	 * @return int			offset of the posting or -1
+	 */
+	private int findPosting(int term, int id)
+	{
+		int found = Arrays.binarySearch(docs, termStart[term], termStart[term + 1], id);
+		return found < 0 ? -1 : found;
+	}
+
+	@Override
+	public int getLocationId(String location)
+	{
+		int low = 0;
+		int high = byName.length - 1;
+
+		while (low <= high)
+		{
+			int middle = (low + high) >>> 1;
+			int compare = locations[byName[middle]].compareTo(location);
+
+			if (compare < 0)
+			{
+				low = middle + 1;
+			}
+			else if (compare > 0)
+			{
+				high = middle - 1;
+			}
+			else
+			{
+				return byName[middle];
+			}
+		}
+
+		return -1;
+	}
+
+	@Override
+	public String getLocation(int id)
+	{
+		return locations[id];
+	}
+
+	@Override
+	public Map<String, Integer> getCount()
+	{
+		TreeMap<String, Integer> named = new TreeMap<>();
+
+		for (int id = 0; id < locations.length; id++)
+		{
+			named.put(locations[id], lengths[id]);
+		}
+
+		return Collections.unmodifiableMap(named);
+	}
+
+	@Override
+	public Set<String> getLocations()
+	{
+		return Collections.unmodifiableSet(new TreeSet<String>(Arrays.asList(locations)));
+	}
+
+	@Override
+	public Set<String> getWords()
+	{
+		return Collections.unmodifiableSet(new TreeSet<String>(Arrays.asList(terms)));
+	}
+
+	@Override
+	public Set<Integer> getPositions(String word, String location)
+	{
+		int posting = findPosting(word, location);
+
+		if (posting < 0)
+		{
+			return Collections.emptySet();
+		}
+
+		return Collections.unmodifiableSet(new PositionList(decodePositions(posting)));
+	}
+
+	@Override
+	public int numLocation(String word, String file)
+	{
+		int posting = findPosting(word, file);
+		return posting < 0 ? 0 : hits[posting];
+	}
+
+	@Override
+	public Set<String> getLocations(String word)
+	{
+		int term = findTerm(word);
+
+		if (term < 0)
+		{
+			return Collections.emptySet();
+		}
+
+		TreeSet<String> named = new TreeSet<>();
+
+		for (int p = termStart[term]; p < termStart[term + 1]; p++)
+		{
+			named.add(locations[docs[p]]);
+		}
+
+		return Collections.unmodifiableSet(named);
+	}
+
+	@Override
+	List<String> matchingWords(String query, boolean exact)
+	{
+		if (exact)
+		{
+			return findTerm(query) < 0 ? List.of() : List.of(query);
+		}
+
+		ArrayList<String> words = new ArrayList<>();
+
+		for (int term : expand(query))
+		{
+			words.add(terms[term]);
+		}
+
+		return words;
+	}
+
+	/**
+	 * Adds the hits of a word by galloping through its postings, which
+	 * are in the same order as the ids
+	 */
+	@Override
+	void addHits(String word, int[] ids, int[] counts)
+	{
+		int term = findTerm(word);
+
+		if (term < 0)
+		{
+			return;
+		}
+
+		int posting = termStart[term];
+		int end = termStart[term + 1];
+
+		for (int i = 0; i < ids.length; i++)
+		{
+			posting = Intersector.gallop(docs, posting, end, ids[i]);
+
+			if (posting == end)
+			{
+				break;
+			}
+
+			if (docs[posting] == ids[i])
+			{
+				counts[i] += hits[posting];
+			}
+		}
+	}
+
+	@Override
+	void scatter(String word, int[] queries, ScoreAccumulator[] matches)
+	{
+		int term = findTerm(word);
+
+		if (term < 0)
+		{
+			return;
+		}
+
+		scatter(docs, hits, termStart[term], termStart[term + 1], queries, matches);
+	}
+
+	/**
+	 * Searches each query of the batch on its own when ranking with BM25,
+	 * which does not add up counts
+	 */
+	@Override
+	List<ArrayList<Result>> findBatch(List<? extends Collection<String>> queries, boolean exact)
+	{
+		if (bm25)
+		{
+			ArrayList<ArrayList<Result>> results = new ArrayList<>(queries.size());
+
+			for (Collection<String> query : queries)
+			{
+				results.add(findResults(query, exact));
+			}
+
+			return results;
+		}
+
+		return super.findBatch(queries, exact);
+	}
+
+	@Override
+	int frequency(String word)
+	{
+		int term = findTerm(word);
+		return term < 0 ? 0 : termStart[term + 1] - termStart[term];
+	}
+
+	@Override
+	int[] documents(String word)
+	{
+		int term = findTerm(word);
+		return term < 0 ? new int[0] : Arrays.copyOfRange(docs, termStart[term], termStart[term + 1]);
+	}
+
+	@Override
+	int[] positions(String word, int id)
+	{
+		int term = findTerm(word);
+		int posting = term < 0 ? -1 : findPosting(term, id);
+		return posting < 0 ? new int[0] : decodePositions(posting);
+	}
+
+	@Override
+	int wordCount(int id)
+	{
+		return lengths[id];
+	}
+
+	@Override
+	ArrayList<Result> findResults(Collection<String> queries, boolean exact)
+	{
+		if (bm25)
+		{
+			return bm25Matches(queryTerms(queries, exact));
+		}
+
+		return accumulate(queries, exact).results(id -> locations[id], id -> lengths[id]);
+	}
+
+	/**
+	 * Returns the best results. When ranking with BM25, locations that
+	 * cannot make it in to the top results are skipped.
+	 *
+	 * @param queries					Collection of queries
+	 * @param exact						boolean to know whether we are doing exact
+	 * @param k							most results to return
+	 * @return List 					best k Results in sorted order
+	 */
+	@Override
+	ArrayList<Result> findTop(Collection<String> queries, boolean exact, int k)
+	{
+		if (bm25)
+		{
+			return wand(queryTerms(queries, exact), k);
+		}
+
+		return accumulate(queries, exact).top(k, id -> locations[id], id -> lengths[id]);
+	}
+
+
+	@Override
+	public void useBm25(boolean bm25)
+	{
+		this.bm25 = bm25;
+	}
+
+	/**
+	 * Scores a location with BM25 when ranking with it, adding up the
+	 * score of each word at the location. The count stays the number of
+	 * matches the search found.
+	 */
+	@Override
+	Result score(int id, int hits, Collection<String> words)
+	{
+		if (!bm25)
+		{
+			return super.score(id, hits, words);
+		}
+
+		double total = 0;
+
+		for (String word : words)
+		{
+			int term = findTerm(word);
+			int posting = term < 0 ? -1 : findPosting(term, id);
+
+			if (posting >= 0)
+			{
+				total += score(idf(term), posting);
+			}
+		}
+
+		scored.add(words.size());
+		Result result = new Result(locations[id]);
+		result.addScore(hits, total);
+		return result;
+	}
+
+	/**
+	 * Returns the number of postings scored by BM25 searches so far
+	 *
+	 * @return long			number of postings scored
+	 */
+	long scoredPostings()
+	{
+		return scored.sum();
+	}
+
+	/**
+	 * Returns the distinct words the queries match, a word matched by
+	 * several queries only counts once in the BM25 score
+	 *
+	 * @param queries			Collection of queries
+	 * @param exact				boolean to know whether we are doing exact
+	 * @return int[]			indexes of the matching words in increasing order
+	 */
+	private int[] queryTerms(Collection<String> queries, boolean exact)
+	{
+		TreeSet<Integer> matched = new TreeSet<>();
+
+		for (String query : queries)
+		{
+			if (exact)
+			{
+				int term = findTerm(query);
+
+				if (term >= 0)
+				{
+					matched.add(term);
+				}
+			}
+			else
+			{
+				for (int term : expand(query))
+				{
+					matched.add(term);
+				}
+			}
+		}
+
+		return matched.stream().mapToInt(Integer::intValue).toArray();
+	}
+
+	/**
+	 * Returns the BM25 weight of a word
+	 *
+	 * @param term			index of the word
+	 * @return double		idf of the word
+	 */
+	private double idf(int term)
+	{
+		return Bm25.idf(termStart[term + 1] - termStart[term], locations.length);
+	}
+
+	/**
+	 * Returns the BM25 score a posting adds to its location
+	 *
+	 * @param idf			idf of the word of the posting
+	 * @param posting		offset of the posting
+	 * @return double		score of the posting
+	 */
+	private double score(double idf, int posting)
+	{
+		return idf * Bm25.tf(hits[posting], lengths[docs[posting]], averageLength);
+	}
+
+	/**
+	 * Returns the highest BM25 score of every word, computing them the
+	 * first time
+	 *
+	 * @return double[]		highest score of each word
+	 */
+	private double[] maxScores()
+	{
+		double[] bounds = maxScores;
+
+		if (bounds == null)
+		{
+			bounds = new double[terms.length];
+
+			for (int term = 0; term < terms.length; term++)
+			{
+				double idf = idf(term);
+
+				for (int p = termStart[term]; p < termStart[term + 1]; p++)
+				{
+					bounds[term] = Math.max(bounds[term], score(idf, p));
+				}
+			}
+
+			maxScores = bounds;
+		}
+
+		return bounds;
+	}
+
+	/**
+	 * Scores every posting of the words with BM25
+	 *
+	 * @param words				indexes of the words
+	 * @return ArrayList		unsorted ArrayList of Results
+	 */
+	private ArrayList<Result> bm25Matches(int[] words)
+	{
+		ArrayList<Result> results = new ArrayList<>();
+		Map<Integer, Result> lookup = new HashMap<>();
+
+		for (int term : words)
+		{
+			double idf = idf(term);
+
+			for (int p = termStart[term]; p < termStart[term + 1]; p++)
+			{
+				Result result = lookup.get(docs[p]);
+
+				if (result == null)
+				{
+					result = new Result(locations[docs[p]]);
+					lookup.put(docs[p], result);
+					results.add(result);
+				}
+
+				result.addScore(hits[p], score(idf, p));
+			}
+			scored.add(termStart[term + 1] - termStart[term]);
+		}
+
+		return results;
+	}
+
+	/**
+	 * Finds the best k results with the WAND algorithm. A cursor walks
+	 * the postings of each word in document id order. Before scoring a
+	 * location, the highest scores of the words are added up in order of
+	 * their next location. The cursors whose highest scores together
+	 * cannot beat the worst result kept so far jump straight to the first
+	 * location that can, skipping every posting in between.
+	 *
+	 * @param words				indexes of the words
+	 * @param k					most results to return
+	 * @return ArrayList		best k results in sorted order
+	 */
+	private ArrayList<Result> wand(int[] words, int k)
+	{
+		int n = words.length;
+		int[] cursor = new int[n];
+		int[] end = new int[n];
+		double[] idf = new double[n];
+		double[] bound = new double[n];
+		int[] order = new int[n];
+		double[] bounds = maxScores();
+
+		for (int i = 0; i < n; i++)
+		{
+			cursor[i] = termStart[words[i]];
+			end[i] = termStart[words[i] + 1];
+			idf[i] = idf(words[i]);
+			bound[i] = bounds[words[i]];
+			order[i] = i;
+		}
+
+		// the head of the heap is the worst of the best results so far
+		PriorityQueue<Result> heap = new PriorityQueue<>(k + 1, Collections.reverseOrder());
+		long count = 0;
+
+		while (k > 0)
+		{
+			// keep the cursors sorted by their next location, finished cursors last
+			for (int i = 1; i < n; i++)
+			{
+				int c = order[i];
+				int j = i - 1;
+
+				while (j >= 0 && next(cursor, end, order[j]) > next(cursor, end, c))
+				{
+					order[j + 1] = order[j];
+					j--;
+				}
+				order[j + 1] = c;
+			}
+
+			double threshold = heap.size() < k ? Double.NEGATIVE_INFINITY : heap.peek().getScore();
+			double sum = 0;
+			int pivot = -1;
+
+			for (int i = 0; i < n && cursor[order[i]] < end[order[i]]; i++)
+			{
+				sum += bound[order[i]];
+
+				// a location that ties the threshold can still win on count or name
+				if (sum * (1 + 1e-9) >= threshold)
+				{
+					pivot = i;
+					break;
+				}
+			}
+
+			if (pivot < 0)
+			{
+				break;
+			}
+
+			int target = docs[cursor[order[pivot]]];
+
+			if (docs[cursor[order[0]]] == target)
+			{
+				Result result = new Result(locations[target]);
+
+				// add in word order so the sum matches the exhaustive search
+				for (int c = 0; c < n; c++)
+				{
+					if (cursor[c] < end[c] && docs[cursor[c]] == target)
+					{
+						result.addScore(hits[cursor[c]], score(idf[c], cursor[c]));
+						cursor[c]++;
+						count++;
+					}
+				}
+
+				if (heap.size() < k)
+				{
+					heap.add(result);
+				}
+				else if (result.compareTo(heap.peek()) < 0)
+				{
+					heap.poll();
+					heap.add(result);
+				}
+			}
+			else
+			{
+				for (int i = 0; i < pivot; i++)
+				{
+					int c = order[i];
+					int found = Arrays.binarySearch(docs, cursor[c], end[c], target);
+					cursor[c] = found < 0 ? -(found + 1) : found;
+				}
+			}
+		}
+
+		scored.add(count);
+		ArrayList<Result> top = new ArrayList<>(heap);
+		Collections.sort(top);
+		return top;
+	}
+
+	/**
+	 * Returns the next location of a cursor or the largest int once the
+	 * cursor is finished
+	 *
+	 * @param cursor		posting each cursor is at
+	 * @param end			end of the postings of each cursor
+	 * @param c				cursor to look at
+	 * @return int			next location of the cursor
+	 */
+	private int next(int[] cursor, int[] end, int c)
+	{
+		return cursor[c] < end[c] ? docs[cursor[c]] : Integer.MAX_VALUE;
+	}
+
+	/**
+	 * Adds up the matches of the queries by document id. Exact queries
+	 * are found with a binary search of the sorted words and partial
+	 * queries with the prefix trie.
+	 *
+	 * @param queries			Collection of queries to be searched
+	 * @param exact				boolean to know whether we are doing exact
+	 * @return ScoreAccumulator	matches of each document id
+	 */
+	private ScoreAccumulator accumulate(Collection<String> queries, boolean exact)
+	{
+		ScoreAccumulator matches = ScoreAccumulator.get(locations.length);
+
+		for (String query : queries)
+		{
+			int[] words = exact ? new int[] { findTerm(query) } : expand(query);
+
+			for (int term : words)
+			{
+				if (term < 0)
+				{
+					continue;
+				}
+
+				for (int p = termStart[term]; p < termStart[term + 1]; p++)
+				{
+					matches.add(docs[p], hits[p]);
+				}
+			}
+		}
+
+		return matches;
+	}
+
+	@Override
+	public void forEachPosting(PostingConsumer consumer)
+	{
+		for (int term = 0; term < terms.length; term++)
+		{
+			for (int p = termStart[term]; p < termStart[term + 1]; p++)
+			{
+				consumer.accept(terms[term], locations[docs[p]], new PositionList(decodePositions(p)));
+			}
+		}
+	}
+
+	@Override
+	public void countMatches(Collection<String> queries, boolean exact, Map<String, Integer> matches)
+	{
+		for (String query : queries)
+		{
+			int[] expanded = exact ? new int[] { findTerm(query) } : expand(query);
+
+			for (int term : expanded)
+			{
+				if (term < 0)
+				{
+					continue;
+				}
+
+				for (int p = termStart[term]; p < termStart[term + 1]; p++)
+				{
+					matches.merge(locations[docs[p]], hits[p], Integer::sum);
+				}
+			}
+		}
+	}
+
+	@Override
+	public void toJson(Path path) throws IOException
+	{
+		try (BufferedWriter writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8)) {
+			writer.write("{\n");
+
+			for (int term = 0; term < terms.length; term++)
+			{
+				if (term > 0)
+				{
+					writer.write(",\n");
+				}
+				nestedJson(term, writer);
+			}
+			writer.write('\n');
+			writer.write("}\n");
+		}
+	}
+
+	/**
+	 * Writes the postings of a single word sorted by location.
+	 *
+	 * @param term		index of the word to be written
+	 * @param writer	writer to write to
+	 * @throws IOException
+	 */
+	private void nestedJson(int term, Writer writer) throws IOException
+	{
+		TreeMap<String, PositionList> named = new TreeMap<>();
+
+		for (int p = termStart[term]; p < termStart[term + 1]; p++)
+		{
+			named.put(locations[docs[p]], new PositionList(decodePositions(p)));
+		}
+
+		JsonWriter.quote(terms[term], writer, 1);
+		writer.write(": ");
+		JsonWriter.asNestedObject(named, writer, 1);
+	}
+
+	/**
+	 * Saves the snapshot to a binary index file.
+	 *
+	 * @param path		file to write to
+	 * @throws IOException
+	 * @see IndexFile
+	 */
+	@Override
+	public void save(Path path) throws IOException
+	{
+		IndexFile.write(path, terms, termStart, docs, hits, positionStart, positions, locations, lengths, byName);
+	}
+
+	/**
+	 * Loads a snapshot from a binary index file written by {@link #save(Path)}.
+	 *
+	 * @param path						file to read from
+	 * @return FrozenInvertedIndex		the loaded snapshot
+	 * @throws IOException
+	 * @see IndexFile
+	 */
+	public static FrozenInvertedIndex load(Path path) throws IOException
+	{
+		return IndexFile.read(path);
+	}
+
+	/**
+	 * The snapshot is already frozen.
+	 *
+	 * @return this
+	 */
+	@Override
+	public FrozenInvertedIndex freeze()
+	{
+		return this;
+	}
+
+	/**
+	 * The snapshot cannot be changed.
+	 *
+	 * @throws UnsupportedOperationException always
+	 */
+	@Override
+	public void addIndex(String word, String pretty, int num)
+	{
+		throw new UnsupportedOperationException("A frozen index cannot be changed.");
+	}
+
+	/**
+	 * The snapshot cannot be changed.
+	 *
+	 * @throws UnsupportedOperationException always
+	 */
+	@Override
+	public void addDocument(String location, Map<String, PositionList> words, int length)
+	{
+		throw new UnsupportedOperationException("A frozen index cannot be changed.");
+	}
+
+	/**
+	 * The snapshot cannot be changed.
+	 *
+	 * @throws UnsupportedOperationException always
+	 */
+	@Override
+	public void addAll(InvertedIndex local)
+	{
+		throw new UnsupportedOperationException("A frozen index cannot be changed.");
+	}
+
+	/**
+	 * The snapshot cannot be changed.
+	 *
+	 * @throws UnsupportedOperationException always
+	 */
+	@Override
+	public void addAll(InvertedIndex local, Predicate<String> words)
+	{
+		throw new UnsupportedOperationException("A frozen index cannot be changed.");
+	}
+}
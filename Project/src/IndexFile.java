@@ -0,0 +1,490 @@
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.function.IntFunction;
+import java.util.function.IntUnaryOperator;
+
+/**
+ * Utility class to save a {@link FrozenInvertedIndex} to a compact binary
+ * file and load it back, so a server can start without rebuilding the
+ * index. All numbers are big-endian and the file is laid out as
+ *
+ * <pre>
+ * header:    magic, version, terms, postings, documents,
+ *            term bytes, location bytes, position bytes     (8 ints)
+ * termStart      int[terms + 1]      first posting of each word
+ * docs           int[postings]       document id of each posting
+ * hits           int[postings]       number of positions of each posting
+ * positionStart  int[postings + 1]   offset of the positions of each posting
+ * lengths        int[documents]      word count of each document
+ * byName         int[documents]      document ids sorted by location
+ * termOffsets    int[terms + 1]      offset of each word in the word bytes
+ * locOffsets     int[documents + 1]  offset of each location in the location bytes
+ * word bytes     UTF-8 words in sorted order
+ * location bytes UTF-8 locations in document id order
+ * positions      variable byte encoded positions, see {@link PositionList}
+ * </pre>
+ *
+ * Every section has a size that is known from the header, so a section
+ * can be found without reading the ones before it.
+ *
+ * @author hayde
+ */
+public class IndexFile
+{
+	/**
+	 * marks the start of an index file, the bytes of "LLIX"
+	 */
+	public static final int MAGIC = 0x4C4C4958;
+
+	/**
+	 * version of the file layout
+	 */
+	public static final int VERSION = 2;
+
+	/**
+	 * number of bytes in the header
+	 */
+	public static final int HEADER = 8 * Integer.BYTES;
+
+	/**
+	 * number of bytes read from disk at a time while loading
+	 */
+	private static final int CHUNK = 1 << 20;
+
+	/**
+	 * Writes the arrays of a frozen index to a file.
+	 *
+	 * @param path				file to write to
+	 * @param terms				sorted words
+	 * @param termStart			posting offset of each word
+	 * @param docs				document id of each posting
+	 * @param hits				number of positions of each posting
+	 * @param positionStart		encoded position offset of each posting
+	 * @param positions			encoded positions
+	 * @param locations			location of each document id
+	 * @param lengths			word count of each document id
+	 * @param byName			document ids sorted by location
+	 * @throws IOException
+	 */
+	static void write(Path path, String[] terms, int[] termStart, int[] docs, int[] hits,
+			int[] positionStart, byte[] positions, String[] locations, int[] lengths, int[] byName) throws IOException
+	{
+		byte[][] termBytes = encode(terms);
+		byte[][] locationBytes = encode(locations);
+
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(path), CHUNK)))
+		{
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeInt(terms.length);
+			out.writeInt(docs.length);
+			out.writeInt(locations.length);
+			out.writeInt(totalLength(termBytes));
+			out.writeInt(totalLength(locationBytes));
+			out.writeInt(positions.length);
+
+			writeInts(out, termStart);
+			writeInts(out, docs);
+			writeInts(out, hits);
+			writeInts(out, positionStart);
+			writeInts(out, lengths);
+			writeInts(out, byName);
+			writeOffsets(out, termBytes);
+			writeOffsets(out, locationBytes);
+
+			for (byte[] term : termBytes)
+			{
+				out.write(term);
+			}
+
+			for (byte[] location : locationBytes)
+			{
+				out.write(location);
+			}
+
+			out.write(positions);
+		}
+	}
+
+	/**
+	 * Loads an index file written by {@link #write} in to a frozen index.
+	 *
+	 * @param path						file to read from
+	 * @return FrozenInvertedIndex		the loaded index
+	 * @throws IOException				if the file is not an index file
+	 */
+	public static FrozenInvertedIndex read(Path path) throws IOException
+	{
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ))
+		{
+			int[] header = readInts(channel, 8);
+			checkHeader(header, channel.size(), path);
+
+			int terms = header[2];
+			int postings = header[3];
+			int documents = header[4];
+
+			int[] termStart = readInts(channel, terms + 1);
+			int[] docs = readInts(channel, postings);
+			int[] hits = readInts(channel, postings);
+			int[] positionStart = readInts(channel, postings + 1);
+			int[] lengths = readInts(channel, documents);
+			int[] byName = readInts(channel, documents);
+			int[] termOffsets = readInts(channel, terms + 1);
+			int[] locationOffsets = readInts(channel, documents + 1);
+
+			byte[] wordBytes = readBytes(channel, header[5]);
+			byte[] locationBytes = readBytes(channel, header[6]);
+			byte[] positions = readBytes(channel, header[7]);
+
+			checkSections(header, i -> termStart[i], i -> docs[i], i -> hits[i], i -> positionStart[i],
+					i -> byName[i], i -> termOffsets[i], i -> locationOffsets[i], i -> positions[i], path);
+
+			String[] words = decode(wordBytes, termOffsets);
+			String[] locations = decode(locationBytes, locationOffsets);
+			checkWords(i -> words[i], terms, path);
+
+			return new FrozenInvertedIndex(words, termStart, docs, hits, positionStart, positions, locations, lengths, byName);
+		}
+	}
+
+	/**
+	 * Makes sure a header belongs to an index file this class can read and
+	 * that the sizes it gives add up to the size of the file.
+	 *
+	 * @param header		the header ints
+	 * @param size			size of the file in bytes
+	 * @param path			file the header was read from
+	 * @throws IOException	if the file is not a supported index file
+	 */
+	static void checkHeader(int[] header, long size, Path path) throws IOException
+	{
+		if (header[0] != MAGIC)
+		{
+			throw new IOException(path + " is not an index file.");
+		}
+
+		if (header[1] != VERSION)
+		{
+			throw new IOException(path + " has unsupported index file version " + header[1] + ".");
+		}
+
+		for (int i = 2; i < header.length; i++)
+		{
+			// every count has room for the extra entry at the end of its offsets
+			if (header[i] < 0 || header[i] == Integer.MAX_VALUE)
+			{
+				throw new IOException(path + " has an invalid size " + header[i] + " in its header.");
+			}
+		}
+
+		long terms = header[2];
+		long postings = header[3];
+		long documents = header[4];
+		long ints = 2 * (terms + 1) + 3 * postings + 1 + 3 * documents + 1;
+		long expected = HEADER + ints * Integer.BYTES + header[5] + header[6] + header[7];
+
+		if (expected != size)
+		{
+			throw new IOException(path + " should be " + expected + " bytes but is " + size + " bytes.");
+		}
+	}
+
+	/**
+	 * Makes sure every offset of an index file stays inside the section it
+	 * points in to and every document id belongs to a document, so a
+	 * corrupt file is reported instead of failing while it is searched.
+	 * The sections are passed as functions so they can be arrays or
+	 * mapped from the file.
+	 *
+	 * @param header			the header ints
+	 * @param termStart			first posting of each word
+	 * @param docs				document id of each posting
+	 * @param hits				number of positions of each posting
+	 * @param positionStart		offset of the positions of each posting
+	 * @param byName			document ids sorted by location
+	 * @param termOffsets		offset of each word in the word bytes
+	 * @param locationOffsets	offset of each location in the location bytes
+	 * @param positions			encoded positions
+	 * @param path				file the sections were read from
+	 * @throws IOException		if a section points outside of another
+	 */
+	static void checkSections(int[] header, IntUnaryOperator termStart, IntUnaryOperator docs, IntUnaryOperator hits,
+			IntUnaryOperator positionStart, IntUnaryOperator byName, IntUnaryOperator termOffsets,
+			IntUnaryOperator locationOffsets, IntUnaryOperator positions, Path path) throws IOException
+	{
+		int terms = header[2];
+		int postings = header[3];
+		int documents = header[4];
+
+		checkOffsets(termStart, terms, postings, "postings", path);
+		checkOffsets(positionStart, postings, header[7], "positions", path);
+		checkOffsets(termOffsets, terms, header[5], "words", path);
+		checkOffsets(locationOffsets, documents, header[6], "locations", path);
+
+		for (int term = 0; term < terms; term++)
+		{
+			int previous = -1;
+
+			for (int p = termStart.applyAsInt(term); p < termStart.applyAsInt(term + 1); p++)
+			{
+				int id = docs.applyAsInt(p);
+
+				// the postings of a word are searched by document id, so the ids have to increase
+				if (id <= previous || id >= documents)
+				{
+					throw new IOException(path + " has an invalid document id " + id + " in its postings.");
+				}
+
+				int found = hits.applyAsInt(p);
+
+				int start = positionStart.applyAsInt(p);
+				int end = positionStart.applyAsInt(p + 1);
+
+				// every position takes at least one byte and the last one ends the posting
+				if (found < 0 || found > end - start || (end > start && positions.applyAsInt(end - 1) < 0))
+				{
+					throw new IOException(path + " has invalid positions in posting " + p + ".");
+				}
+
+				previous = id;
+			}
+		}
+
+		for (int i = 0; i < documents; i++)
+		{
+			int id = byName.applyAsInt(i);
+
+			if (id < 0 || id >= documents)
+			{
+				throw new IOException(path + " has an invalid document id " + id + " in its locations.");
+			}
+		}
+	}
+
+	/**
+	 * Makes sure the words of an index file are in sorted order without
+	 * repeats, since words are found by searching them in order
+	 *
+	 * @param words			the word at each index
+	 * @param terms			number of words
+	 * @param path			file the words were read from
+	 * @throws IOException	if the words are not sorted
+	 */
+	static void checkWords(IntFunction<String> words, int terms, Path path) throws IOException
+	{
+		String previous = null;
+
+		for (int term = 0; term < terms; term++)
+		{
+			String word = words.apply(term);
+
+			if (previous != null && previous.compareTo(word) >= 0)
+			{
+				throw new IOException(path + " has words out of order at " + word + ".");
+			}
+
+			previous = word;
+		}
+	}
+
+	/**
+	 * Makes sure offsets start at zero, never decrease and end at the end
+	 * of the section they point in to
+	 *
+	 * @param offsets		offset of each entry with one extra entry at the end
+	 * @param count			number of entries
+	 * @param end			size of the section the offsets point in to
+	 * @param section		name of the section for the message
+	 * @param path			file the offsets were read from
+	 * @throws IOException	if an offset is outside of the section
+	 */
+	private static void checkOffsets(IntUnaryOperator offsets, int count, int end, String section, Path path) throws IOException
+	{
+		int previous = 0;
+
+		for (int i = 0; i <= count; i++)
+		{
+			int offset = offsets.applyAsInt(i);
+
+			if ((i == 0 && offset != 0) || offset < previous || offset > end || (i == count && offset != end))
+			{
+				throw new IOException(path + " has an invalid offset " + offset + " in to its " + section + ".");
+			}
+
+			previous = offset;
+		}
+	}
+
+	/**
+	 * Encodes every string as UTF-8
+	 *
+	 * @param strings		strings to encode
+	 * @return byte[][]		encoded strings
+	 */
+	private static byte[][] encode(String[] strings)
+	{
+		byte[][] encoded = new byte[strings.length][];
+
+		for (int i = 0; i < strings.length; i++)
+		{
+			encoded[i] = strings[i].getBytes(StandardCharsets.UTF_8);
+		}
+
+		return encoded;
+	}
+
+	/**
+	 * Decodes UTF-8 strings stored one after another
+	 *
+	 * @param bytes			encoded strings
+	 * @param offsets		offset of each string with one extra entry at the end
+	 * @return String[]		decoded strings
+	 */
+	private static String[] decode(byte[] bytes, int[] offsets)
+	{
+		String[] decoded = new String[offsets.length - 1];
+
+		for (int i = 0; i < decoded.length; i++)
+		{
+			decoded[i] = new String(bytes, offsets[i], offsets[i + 1] - offsets[i], StandardCharsets.UTF_8);
+		}
+
+		return decoded;
+	}
+
+	/**
+	 * Returns the combined length of several byte arrays
+	 *
+	 * @param arrays		arrays to add up
+	 * @return int			combined length
+	 */
+	private static int totalLength(byte[][] arrays)
+	{
+		long total = 0;
+
+		for (byte[] array : arrays)
+		{
+			total += array.length;
+		}
+
+		return Math.toIntExact(total);
+	}
+
+	/**
+	 * Writes an array of ints
+	 *
+	 * @param out			stream to write to
+	 * @param values		values to write
+	 * @throws IOException
+	 */
+	private static void writeInts(DataOutputStream out, int[] values) throws IOException
+	{
+		for (int value : values)
+		{
+			out.writeInt(value);
+		}
+	}
+
+	/**
+	 * Writes the offset of each byte array if they were stored one after
+	 * another, with one extra entry for the end of the last array
+	 *
+	 * @param out			stream to write to
+	 * @param arrays		arrays to write the offsets of
+	 * @throws IOException
+	 */
+	private static void writeOffsets(DataOutputStream out, byte[][] arrays) throws IOException
+	{
+		int offset = 0;
+		out.writeInt(offset);
+
+		for (byte[] array : arrays)
+		{
+			offset += array.length;
+			out.writeInt(offset);
+		}
+	}
+
+	/**
+	 * Reads the next ints from the channel in large chunks
+	 *
+	 * @param channel		channel to read from
+	 * @param count			number of ints to read
+	 * @return int[]		ints that were read
+	 * @throws IOException	if the count is negative or the file ends first
+	 */
+	private static int[] readInts(FileChannel channel, int count) throws IOException
+	{
+		if (count < 0)
+		{
+			throw new IOException("Unable to read " + count + " ints from an index file.");
+		}
+
+		int[] values = new int[count];
+		ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(CHUNK, (long) count * Integer.BYTES));
+		int read = 0;
+
+		while (read < count)
+		{
+			buffer.clear();
+			buffer.limit((int) Math.min(buffer.capacity(), (long) (count - read) * Integer.BYTES));
+			fill(channel, buffer);
+
+			IntBuffer ints = buffer.asIntBuffer();
+			int length = ints.remaining();
+			ints.get(values, read, length);
+			read += length;
+		}
+
+		return values;
+	}
+
+	/**
+	 * Reads the next bytes from the channel
+	 *
+	 * @param channel		channel to read from
+	 * @param count			number of bytes to read
+	 * @return byte[]		bytes that were read
+	 * @throws IOException	if the count is negative or the file ends first
+	 */
+	private static byte[] readBytes(FileChannel channel, int count) throws IOException
+	{
+		if (count < 0)
+		{
+			throw new IOException("Unable to read " + count + " bytes from an index file.");
+		}
+
+		byte[] values = new byte[count];
+		fill(channel, ByteBuffer.wrap(values));
+		return values;
+	}
+
+	/**
+	 * Reads from the channel until the buffer is full and flips it
+	 *
+	 * @param channel		channel to read from
+	 * @param buffer		buffer to fill
+	 * @throws IOException	if the file ends first
+	 */
+	private static void fill(FileChannel channel, ByteBuffer buffer) throws IOException
+	{
+		while (buffer.hasRemaining())
+		{
+			if (channel.read(buffer) < 0)
+			{
+				throw new IOException("Index file ended early.");
+			}
+		}
+
+		buffer.flip();
+	}
+}
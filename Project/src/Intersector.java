@@ -0,0 +1,80 @@
+import java.util.Arrays;
+
+/**
+ * Utility class to intersect sorted lists of ints, like the document ids
+ * of the postings of several words. The shorter list is walked and the
+ * longer one is searched by galloping, which probes 1, 2, 4, 8, ...
+ * entries ahead before a binary search of the last step. Intersecting a
+ * rare word with a common one only looks at a few entries of the common
+ * word instead of all of them.
+ *
+ * @author hayde
+ */
+public class Intersector
+{
+	/**
+	 * Returns the first index of a sorted range whose value is not less
+	 * than the target, or the end of the range if there is none
+	 *
+	 * @param values		sorted values
+	 * @param from			first index of the range
+	 * @param to			one past the last index of the range
+	 * @param target		value to look for
+	 * @return int			first index with a value not less than the target
+	 */
+	public static int gallop(int[] values, int from, int to, int target)
+	{
+		if (from >= to || values[from] >= target)
+		{
+			return from;
+		}
+
+		int low = from;
+		int step = 1;
+
+		while (low + step < to && values[low + step] < target)
+		{
+			low += step;
+			step <<= 1;
+		}
+
+		int found = Arrays.binarySearch(values, low + 1, Math.min(low + step + 1, to), target);
+		return found < 0 ? -(found + 1) : found;
+	}
+
+	/**
+	 * Returns the values found in both sorted arrays
+	 *
+	 * @param a				sorted values without duplicates
+	 * @param b				sorted values without duplicates
+	 * @return int[]		sorted values found in both
+	 */
+	public static int[] intersect(int[] a, int[] b)
+	{
+		if (a.length > b.length)
+		{
+			return intersect(b, a);
+		}
+
+		int[] both = new int[a.length];
+		int count = 0;
+		int j = 0;
+
+		for (int value : a)
+		{
+			j = gallop(b, j, b.length, value);
+
+			if (j == b.length)
+			{
+				break;
+			}
+
+			if (b[j] == value)
+			{
+				both[count++] = value;
+			}
+		}
+
+		return Arrays.copyOf(both, count);
+	}
+}
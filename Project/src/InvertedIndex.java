@@ -1,13 +1,24 @@
+import java.io.BufferedWriter;
 import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.PriorityQueue;
 import java.util.Set;
 import java.util.TreeMap;
 import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
 
 /**
  * @author Hayden Miller git: nedyah
@@ -20,244 +31,1290 @@ import java.util.TreeSet;
 public class InvertedIndex 
 {
 	/**
-	 *  private final variable that stores our Inverted Index
+	 *  private final variable that stores our Inverted Index, postings are 
+	 *  keyed by the document id of each location
 	 */
-	private final TreeMap<String, TreeMap<String, TreeSet<Integer>>> index;
+	private final TreeMap<String, TreeMap<Integer, PositionList>> index;
 
 	/**
-	 * Private variable that stores our Counts data 
+	 * Private variable that stores our Counts data, indexed by document id 
 	 */
-	private final TreeMap<String, Integer> counts;
+	private final ArrayList<Integer> counts;
+
+	/**
+	 * Location dictionary that maps a document id back to its location 
+	 */
+	private final ArrayList<String> locations;
+
+	/**
+	 * Location dictionary that maps a location to its document id 
+	 */
+	private final HashMap<String, Integer> locationIds;
+
+	/**
+	 * Most queries a batch search adds up at once. Every query of a batch 
+	 * keeps its own counts until the batch is done. 
+	 */
+	public static final int BATCH = 64;
+
+	/**
+	 * Most words a single partial search query expands to 
+	 */
+	private volatile int maxExpansions;
+
+	/**
+	 * Most postings a query term can have before a search drops it 
+	 */
+	private volatile long postingBudget;
+
+	/**
+	 * Number of changes made to the index, used to tell whether results 
+	 * found earlier are still current 
+	 */
+	private final AtomicLong version;
 
 	/**
 	 * Constructor for the class 
 	 * instantiates index and jsonCount
 	 */
-	public InvertedIndex()
+	public InvertedIndex()
+	{
+		// Declare our Data Structures when InvertedIndex class is created 
+		index = new TreeMap<>();
+		counts = new ArrayList<Integer>();
+		locations = new ArrayList<String>();
+		locationIds = new HashMap<String, Integer>();
+		maxExpansions = Integer.MAX_VALUE;
+		postingBudget = Long.MAX_VALUE;
+		version = new AtomicLong();
+	}
+
+	/**
+	 * Switches the searches between ranking by the share of matching 
+	 * words, the default, and ranking by {@link Bm25}. Only indexes 
+	 * that keep the statistics BM25 needs support it. 
+	 * 
+	 * @param bm25			whether to rank with BM25
+	 * @throws UnsupportedOperationException if the index cannot rank with BM25
+	 * @see FrozenInvertedIndex
+	 */
+	public void useBm25(boolean bm25)
+	{
+		if (bm25)
+		{
+			throw new UnsupportedOperationException("Only a frozen index can rank with BM25.");
+		}
+	}
+
+	/**
+	 * Limits how many words a single partial search query expands to, so 
+	 * a short prefix cannot scan most of the index. When more words match 
+	 * only the first ones in sorted order are searched. 
+	 * 
+	 * @param max			most words a query expands to
+	 */
+	public void setMaxExpansions(int max)
+	{
+		this.maxExpansions = Math.max(max, 1);
+	}
+
+	/**
+	 * Returns the most words a single partial search query expands to 
+	 * 
+	 * @return int			most words a query expands to
+	 */
+	public int getMaxExpansions()
+	{
+		return maxExpansions;
+	}
+
+	/**
+	 * Limits how many postings a query term can have before a search 
+	 * drops it, so a very common word or short prefix cannot make a long 
+	 * query slow. The rarest term of a query is always searched. 
+	 * 
+	 * @param budget		most postings a term can have
+	 * @see QueryPlan
+	 */
+	public void setPostingBudget(long budget)
+	{
+		this.postingBudget = Math.max(budget, 0);
+	}
+
+	/**
+	 * Returns the most postings a query term can have before a search 
+	 * drops it 
+	 * 
+	 * @return long			most postings a term can have
+	 */
+	public long getPostingBudget()
+	{
+		return postingBudget;
+	}
+
+	/**
+	 * Returns the version of the index, which changes after every write. 
+	 * Results found at one version are current until the version changes. 
+	 * 
+	 * @return long			version of the index
+	 */
+	public long getVersion()
+	{
+		return version.get();
+	}
+
+	/**
+	 * Moves the index to its next version. Writers call this after their 
+	 * change is done, so a search that saw an older version never has its 
+	 * results treated as current. 
+	 */
+	void changed()
+	{
+		version.incrementAndGet();
+	}
+
+	/**
+	 * Returns the words a partial search query expands to 
+	 * 
+	 * @param query			prefix to expand
+	 * @return List			matching words, at most {@link #getMaxExpansions()}
+	 */
+	private List<String> expand(String query)
+	{
+		ArrayList<String> words = new ArrayList<>();
+		
+		for (String stem : index.tailMap(query).keySet())
+		{
+			if (!stem.startsWith(query) || words.size() == maxExpansions)
+			{
+				break;
+			}
+			words.add(stem);
+		}
+		
+		return words;
+	}
+
+	/**
+	 * Returns the document id of a location, assigning the next 
+	 * dense id if the location has not been seen before. 
+	 * 
+	 * @param location		location to look up
+	 * @return id			document id of the location
+	 */
+	private int assignId(String location)
+	{
+		Integer id = locationIds.get(location);
+
+		if (id == null)
+		{
+			id = locations.size();
+			locationIds.put(location, id);
+			locations.add(location);
+			counts.add(0);
+		}
+
+		return id;
+	}
+
+	/**
+	 * Returns the document id of a location or -1 if the 
+	 * location is not in the index. 
+	 * 
+	 * @param location		location to look up
+	 * @return id			document id or -1
+	 */
+	public int getLocationId(String location)
+	{
+		return locationIds.getOrDefault(location, -1);
+	}
+
+	/**
+	 * Returns the location of a document id. 
+	 * 
+	 * @param id			document id to look up
+	 * @return location		location the id was assigned to
+	 */
+	public String getLocation(int id)
+	{
+		return locations.get(id);
+	}
+	
+	/**
+	 * Method to merge another index in to our main 
+	 * index. Positions are numbered across the whole document, so a 
+	 * location in both keeps the larger word count, like 
+	 * {@link FrozenInvertedIndex#merge(FrozenInvertedIndex, FrozenInvertedIndex)}. 
+	 * 
+	 * @param local			foreign index to be added
+	 */
+	public void addAll(InvertedIndex local)
+	{
+		merge(local, word -> true);
+		changed();
+	}
+	
+	/**
+	 * Method to merge only some of the words of another index in to 
+	 * our main index, used to split an index between several others. 
+	 * Word counts are merged for every location. 
+	 * 
+	 * @param local			foreign index to be added
+	 * @param words			which of the words to add
+	 */
+	public void addAll(InvertedIndex local, Predicate<String> words)
+	{
+		merge(local, words);
+		changed();
+	}
+	
+	/**
+	 * Helper function both versions of addAll use to merge the 
+	 * words of another index in to ours. 
+	 * 
+	 * @param local			foreign index to be added
+	 * @param words			which of the words to add
+	 */
+	private void merge(InvertedIndex local, Predicate<String> words)
+	{
+		if (local.locations.isEmpty())
+		{
+			// the other index keeps its postings somewhere else, like a frozen snapshot 
+			mergePostings(local, words);
+			return;
+		}
+		
+		// translate the document ids of the local index in to our own 
+		int[] ids = new int[local.locations.size()];
+		
+		for (int i = 0; i < ids.length; i++)
+		{
+			ids[i] = assignId(local.locations.get(i));
+		}
+		
+		for (String word : local.index.keySet())
+		{
+			if (!words.test(word))
+			{
+				continue;
+			}
+			
+			TreeMap<Integer, PositionList> postings = this.index.get(word);
+			
+			if (postings == null)
+			{
+				postings = new TreeMap<Integer, PositionList>();
+				this.index.put(word, postings);
+			}
+			
+			for (Map.Entry<Integer, PositionList> entry : local.index.get(word).entrySet())
+			{
+				int id = ids[entry.getKey()];
+				
+				if (postings.containsKey(id))
+				{
+					postings.get(id).addAll(entry.getValue());
+				}
+				else
+				{
+					postings.put(id, entry.getValue());
+				}
+			}
+		}
+		
+		for (int i = 0; i < ids.length; i++)
+		{
+			this.counts.set(ids[i], Math.max(this.counts.get(ids[i]), local.counts.get(i)));
+		}
+		
+	}
+	
+	/**
+	 * Helper function to merge an index that does not keep its postings 
+	 * in our maps, reading it through {@link #forEachPosting(PostingConsumer)}. 
+	 * 
+	 * @param local			foreign index to be added
+	 * @param words			which of the words to add
+	 */
+	private void mergePostings(InvertedIndex local, Predicate<String> words)
+	{
+		for (Map.Entry<String, Integer> entry : local.getCount().entrySet())
+		{
+			int id = assignId(entry.getKey());
+			this.counts.set(id, Math.max(this.counts.get(id), entry.getValue()));
+		}
+		
+		local.forEachPosting((word, location, positions) -> 
+		{
+			if (!words.test(word))
+			{
+				return;
+			}
+			
+			TreeMap<Integer, PositionList> postings = this.index.computeIfAbsent(word, key -> new TreeMap<>());
+			int id = locationIds.get(location);
+			PositionList list = postings.get(id);
+			
+			if (list == null)
+			{
+				postings.put(id, new PositionList(positions));
+			}
+			else
+			{
+				list.addAll(positions);
+			}
+		});
+	}
+	
+	/**
+	 * Counts the words of a location without adding any words, keeping 
+	 * the larger count, used with {@link #addPosting(String, String, PositionList)} 
+	 * to split another index 
+	 * 
+	 * @param location		location to count 
+	 * @param count			word count of the location 
+	 */
+	void addCount(String location, int count)
+	{
+		int id = assignId(location);
+		counts.set(id, Math.max(counts.get(id), count));
+	}
+	
+	/**
+	 * Adds the positions of a word at a location without changing its 
+	 * word count. The index keeps the position list, so it must not be 
+	 * changed afterwards. 
+	 * 
+	 * @param word			word of the posting 
+	 * @param location		location of the posting 
+	 * @param positions		positions of the word at the location 
+	 */
+	void addPosting(String word, String location, PositionList positions)
+	{
+		TreeMap<Integer, PositionList> postings = index.computeIfAbsent(word, key -> new TreeMap<>());
+		int id = assignId(location);
+		PositionList list = postings.get(id);
+		
+		if (list == null)
+		{
+			postings.put(id, positions);
+		}
+		else
+		{
+			list.addAll(positions);
+		}
+	}
+	
+	/**
+	 * Adds every word of a document at once instead of calling 
+	 * {@link #addIndex(String, String, int)} for every position. The 
+	 * index keeps the position lists, so they must not be changed 
+	 * afterwards. 
+	 * 
+	 * @param location		location of the document
+	 * @param words			positions of each word in the document
+	 * @param length		word count of the document
+	 */
+	public void addDocument(String location, Map<String, PositionList> words, int length)
+	{
+		if (words.isEmpty())
+		{
+			return;
+		}
+		
+		int id = assignId(location);
+		
+		for (Map.Entry<String, PositionList> entry : words.entrySet())
+		{
+			TreeMap<Integer, PositionList> postings = index.get(entry.getKey());
+			
+			if (postings == null)
+			{
+				postings = new TreeMap<Integer, PositionList>();
+				index.put(entry.getKey(), postings);
+			}
+			
+			PositionList list = postings.get(id);
+			
+			if (list == null)
+			{
+				postings.put(id, entry.getValue());
+			}
+			else
+			{
+				list.addAll(entry.getValue());
+			}
+		}
+		
+		counts.set(id, Math.max(counts.get(id), length));
+		changed();
+	}
+	
+	/**
+	 * Passes every posting of the index to the consumer one word at a 
+	 * time, used to copy an index in to one that stores it differently. 
+	 * The positions must not be changed by the consumer. 
+	 * 
+	 * @param consumer		consumer of each word, location and positions
+	 */
+	public void forEachPosting(PostingConsumer consumer)
+	{
+		for (Map.Entry<String, TreeMap<Integer, PositionList>> word : index.entrySet())
+		{
+			for (Map.Entry<Integer, PositionList> entry : word.getValue().entrySet())
+			{
+				consumer.accept(word.getKey(), locations.get(entry.getKey()), entry.getValue());
+			}
+		}
+	}
+	
+	/**
+	 * Consumer of the postings of an index 
+	 * 
+	 * @see InvertedIndex#forEachPosting(PostingConsumer)
+	 */
+	public interface PostingConsumer
+	{
+		/**
+		 * Accepts a single posting 
+		 * 
+		 * @param word			word of the posting
+		 * @param location		location of the posting
+		 * @param positions		positions of the word at the location
+		 */
+		public void accept(String word, String location, PositionList positions);
+	}
+	
+	/**
+	 * Getter method to return the jsonCount object 
+	 * in a safe way where main cant access our data 
+	 * @return jsonCount
+	 */
+	public Map<String, Integer> getCount() {
+		TreeMap<String, Integer> named = new TreeMap<>();
+
+		for (int id = 0; id < locations.size(); id++)
+		{
+			named.put(locations.get(id), counts.get(id));
+		}
+
+		return Collections.unmodifiableMap(named);
+	}
+
+	/**
+	 * returns an unmodifiable key set of jsonCount
+	 * @return unmodifiable keyset 
+	 */
+	public Set<String> getLocations()
+	{
+		return Collections.unmodifiableSet(new TreeSet<String>(locations));
+	}
+
+	/**
+	 * Returns key set of index object.
+	 * @return Set<string> 
+	 */
+	public Set<String> getWords() {
+		return Collections.unmodifiableSet(index.keySet());
+	}
+
+	/**
+	 * Returns an unmodifiable set of hits for a word at a particular
+	 * location. 
+	 * 
+	 * @param word		word to be searched
+	 * @param location	location of word
+	 * @return positions of word in particular location 
+	 *
+	 */
+	public Set<Integer> getPositions(String word, String location)
+	{
+		if (index.containsKey(word))
+		{
+			Integer id = locationIds.get(location);
+			
+			if (id != null && index.get(word).containsKey(id))
+			{
+				return Collections.unmodifiableSet(index.get(word).get(id));
+			}
+			else
+			{
+				return Collections.emptySet();
+			}
+		}
+		else
+		{
+			return Collections.emptySet();
+		}
+	}
+
+	/**
+	 * 
+	 * returns number of hits for a word in a particular file
+	 * 
+	 * @param word		word that is searched	
+	 * @param file		file to be searched
+	 * @return int		number of hits 
+	 * 
+	 */
+	public int numLocation(String word, String file)
+	{
+		if (index.containsKey(word))
+		{
+			Integer id = locationIds.get(file);
+			
+			if (id != null && index.get(word).containsKey(id))
+			{
+				return index.get(word).get(id).size();
+			}
+			else 
+			{
+				return 0;
+			}
+		}
+		return 0;
+	}
+
+	/**
+	 * public search function to determine whether we do partial
+	 * or exact and will return an ArrayList of Results. 
+	 * 
+	 * @param queries					Collection of queries 
+	 * @param exact						boolean to know whether we are doing exact
+	 * @return List 					List of Results	objects
+	 */
+	public ArrayList<Result> search(Collection<String> queries, boolean exact) {
+		return exact ? exactSearch(planned(queries, exact)) : partialSearch(planned(queries, exact));
+	}
+
+	/**
+	 * Search function that only returns the best results, for callers 
+	 * that show one page of results. A bounded heap keeps the best k 
+	 * results seen so far, so only those k are sorted. 
+	 * 
+	 * @param queries					Collection of queries 
+	 * @param exact						boolean to know whether we are doing exact
+	 * @param k							most results to return
+	 * @return List 					best k Results in sorted order
+	 */
+	public ArrayList<Result> search(Collection<String> queries, boolean exact, int k) {
+		return findTop(planned(queries, exact), exact, k);
+	}
+
+	/**
+	 * Plans a search of the queries. Each query term is looked up once 
+	 * to find the words it matches and how many postings they have, 
+	 * and the terms are ordered rarest first. Terms with more postings 
+	 * than {@link #getPostingBudget()} are dropped, except the rarest. 
+	 * 
+	 * @param queries			Collection of queries to be searched
+	 * @param exact				boolean to know whether we are doing exact
+	 * @return QueryPlan		plan of the search
+	 */
+	public QueryPlan plan(Collection<String> queries, boolean exact)
+	{
+		ArrayList<QueryPlan.Step> steps = new ArrayList<>();
+
+		for (String query : queries)
+		{
+			List<String> words = matchingWords(query, exact);
+			long postings = 0;
+
+			for (String word : words)
+			{
+				postings += frequency(word);
+			}
+
+			steps.add(new QueryPlan.Step(query, words, postings));
+		}
+
+		return new QueryPlan(steps, postingBudget);
+	}
+
+	/**
+	 * Returns the queries a search of any word keeps. Every posting of 
+	 * every word is read either way, so the order does not matter and 
+	 * the queries are only planned when there is a budget to apply. 
+	 * 
+	 * @param queries			Collection of queries to be searched
+	 * @param exact				boolean to know whether we are doing exact
+	 * @return Collection		queries to search
+	 */
+	private Collection<String> planned(Collection<String> queries, boolean exact)
+	{
+		return postingBudget == Long.MAX_VALUE ? queries : plan(queries, exact).getQueries();
+	}
+
+	/**
+	 * Returns the best k results in sorted order 
+	 * 
+	 * @param results					unsorted results
+	 * @param k							most results to return
+	 * @return ArrayList				best k results in sorted order
+	 */
+	static ArrayList<Result> topResults(Collection<Result> results, int k)
+	{
+		if (results.size() <= k)
+		{
+			ArrayList<Result> sorted = new ArrayList<>(results);
+			Collections.sort(sorted);
+			return sorted;
+		}
+		
+		// the head of the heap is the worst of the best results so far 
+		PriorityQueue<Result> heap = new PriorityQueue<>(k + 1, Collections.reverseOrder());
+		
+		for (Result result : results)
+		{
+			if (heap.size() < k)
+			{
+				heap.add(result);
+			}
+			else if (k > 0 && result.compareTo(heap.peek()) < 0)
+			{
+				heap.poll();
+				heap.add(result);
+			}
+		}
+		
+		ArrayList<Result> top = new ArrayList<>(heap);
+		Collections.sort(top);
+		return top;
+	}
+
+	/**
+	 * Peforms a partial search of the collection of queries and 
+	 * returns an Array List of Results. 
+	 * 
+	 * @param queries			Collection of queries to be searched
+	 * @return ArrayList		ArrayList of Results 
+	 */
+	public ArrayList<Result> partialSearch(Collection<String> queries) {
+		ArrayList<Result> results = findResults(queries, false);
+		Collections.sort(results);
+		return results;
+	}
+
+	/**
+	 * Finds the result of every location matching the queries in no 
+	 * particular order, used by both sorted and top results searches. 
+	 * Indexes that store their postings differently override this 
+	 * instead of the searches. 
+	 * 
+	 * @param queries			Collection of queries to be searched
+	 * @param exact				boolean to know whether we are doing exact
+	 * @return ArrayList		unsorted ArrayList of Results
+	 */
+	ArrayList<Result> findResults(Collection<String> queries, boolean exact)
+	{
+		return accumulate(queries, exact).results(locations::get, counts::get);
+	}
+
+	/**
+	 * Finds only the best results in sorted order, making a result for 
+	 * just the locations that are returned. Indexes that store their 
+	 * postings differently override this along with the unsorted search. 
+	 * 
+	 * @param queries			Collection of queries to be searched
+	 * @param exact				boolean to know whether we are doing exact
+	 * @param k					most results to return
+	 * @return ArrayList		best k Results in sorted order
+	 */
+	ArrayList<Result> findTop(Collection<String> queries, boolean exact, int k)
+	{
+		return accumulate(queries, exact).top(k, locations::get, counts::get);
+	}
+
+	/**
+	 * Adds up the matches of the queries by document id, the words of 
+	 * an exact search or the words a partial search expands to 
+	 * 
+	 * @param queries			Collection of queries to be searched
+	 * @param exact				boolean to know whether we are doing exact
+	 * @return ScoreAccumulator	matches of each document id
+	 */
+	private ScoreAccumulator accumulate(Collection<String> queries, boolean exact)
+	{
+		ScoreAccumulator matches = ScoreAccumulator.get(locations.size());
+
+		for (String query : queries)
+		{
+			for (String word : matchingWords(query, exact))
+			{
+				for (Map.Entry<Integer, PositionList> entry : index.get(word).entrySet())
+				{
+					matches.add(entry.getKey(), entry.getValue().size());
+				}
+			}
+		}
+
+		return matches;
+	}
+
+	/**
+	 * Searches several queries together. The postings of a word are read 
+	 * once for every query of a batch that matches it instead of once per 
+	 * query, and a prefix shared by several partial queries is expanded 
+	 * once. The results are the same as searching each query with 
+	 * {@link #search(Collection, boolean)}. 
+	 * 
+	 * @param queries			queries to be searched
+	 * @param exact				boolean to know whether we are doing exact
+	 * @return List				sorted results of each query, in the same order
+	 */
+	public List<ArrayList<Result>> batchSearch(List<? extends Collection<String>> queries, boolean exact)
+	{
+		ArrayList<ArrayList<Result>> results = new ArrayList<>(queries.size());
+
+		for (int start = 0; start < queries.size(); start += BATCH)
+		{
+			results.addAll(findBatch(queries.subList(start, Math.min(start + BATCH, queries.size())), exact));
+		}
+
+		for (ArrayList<Result> found : results)
+		{
+			Collections.sort(found);
+		}
+
+		return results;
+	}
+
+	/**
+	 * Finds the unsorted results of a batch of queries. Every word the 
+	 * batch matches is listed with the queries that match it, then the 
+	 * postings of each word are scattered to the counts of those queries. 
+	 * 
+	 * @param queries			at most {@link #BATCH} queries
+	 * @param exact				boolean to know whether we are doing exact
+	 * @return List				unsorted results of each query, in the same order
+	 */
+	List<ArrayList<Result>> findBatch(List<? extends Collection<String>> queries, boolean exact)
+	{
+		HashMap<String, List<String>> expansions = new HashMap<>();
+		LinkedHashMap<String, ArrayList<Integer>> targets = new LinkedHashMap<>();
+		ScoreAccumulator[] matches = ScoreAccumulator.batch(queries.size(), 0);
+
+		for (int i = 0; i < queries.size(); i++)
+		{
+			for (String query : planned(queries.get(i), exact))
+			{
+				// a word two prefixes of a query expand to counts twice, like a search 
+				for (String word : expansions.computeIfAbsent(query, prefix -> matchingWords(prefix, exact)))
+				{
+					targets.computeIfAbsent(word, key -> new ArrayList<>()).add(i);
+				}
+			}
+		}
+
+		for (Map.Entry<String, ArrayList<Integer>> entry : targets.entrySet())
+		{
+			scatter(entry.getKey(), entry.getValue().stream().mapToInt(Integer::intValue).toArray(), matches);
+		}
+
+		ArrayList<ArrayList<Result>> results = new ArrayList<>(queries.size());
+
+		for (int i = 0; i < queries.size(); i++)
+		{
+			results.add(matches[i].results(this::getLocation, this::wordCount));
+		}
+
+		return results;
+	}
+
+	/**
+	 * Adds the hits of every posting of a word to the counts of each 
+	 * query that matches the word. The postings are read from the map 
+	 * once in to arrays, which are then added to one query at a time. 
+	 * 
+	 * @param word				word to read the postings of
+	 * @param queries			queries of the batch that match the word
+	 * @param matches			counts of each query of the batch
+	 */
+	void scatter(String word, int[] queries, ScoreAccumulator[] matches)
+	{
+		TreeMap<Integer, PositionList> postings = index.get(word);
+
+		if (postings == null)
+		{
+			return;
+		}
+
+		int[] ids = new int[postings.size()];
+		int[] hits = new int[ids.length];
+		int i = 0;
+
+		for (Map.Entry<Integer, PositionList> entry : postings.entrySet())
+		{
+			ids[i] = entry.getKey();
+			hits[i++] = entry.getValue().size();
+		}
+
+		scatter(ids, hits, 0, ids.length, queries, matches);
+	}
+
+	/**
+	 * Adds a range of postings to the counts of each query, one query at 
+	 * a time so only one count array is written to at once 
+	 * 
+	 * @param ids				document id of each posting
+	 * @param hits				hits of each posting
+	 * @param start				first posting of the range
+	 * @param end				end of the range, exclusive
+	 * @param queries			queries of the batch to add to
+	 * @param matches			counts of each query of the batch
+	 */
+	static void scatter(int[] ids, int[] hits, int start, int end, int[] queries, ScoreAccumulator[] matches)
+	{
+		for (int query : queries)
+		{
+			ScoreAccumulator match = matches[query];
+
+			for (int i = start; i < end; i++)
+			{
+				match.add(ids[i], hits[i]);
+			}
+		}
+	}
+
+	/**
+	 * Adds up the number of matches of the queries at each location 
+	 * without scoring or sorting them. Used to search several indexes 
+	 * together, where the totals of every index are combined before 
+	 * any results are created. 
+	 * 
+	 * @param queries			Collection of queries to be searched
+	 * @param exact				boolean to know whether we are doing exact
+	 * @param matches			map of location to matches that is added to
+	 */
+	public void countMatches(Collection<String> queries, boolean exact, Map<String, Integer> matches)
+	{
+		for (String query : queries)
+		{
+			if (exact)
+			{
+				if (index.containsKey(query))
+				{
+					countHelper(query, matches);
+				}
+			}
+			else
+			{
+				for (String stem : expand(query))
+				{
+					countHelper(stem, matches);
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Helper function that adds the matches of a word to the totals 
+	 * 
+	 * @param word				word to be searched 
+	 * @param matches			map of location to matches that is added to
+	 */
+	private void countHelper(String word, Map<String, Integer> matches)
+	{
+		for (Map.Entry<Integer, PositionList> entry : index.get(word).entrySet())
+		{
+			matches.merge(locations.get(entry.getKey()), entry.getValue().size(), Integer::sum);
+		}
+	}
+
+	/**
+	 * Performs an exact search given the collection of queries. 
+	 * 
+	 * @param queries			Queries to be searched 
+	 * @return results			ArrayList of results class
+	 */
+	public ArrayList<Result> exactSearch(Collection<String> queries) 
+	{
+		ArrayList<Result> results = findResults(queries, true);
+		Collections.sort(results);
+		return results;
+	}
+
+	/**
+	 * Searches for the locations that match every query, sorted like the 
+	 * results of a regular search. A partial query matches a location 
+	 * that has any of the words it expands to. 
+	 * 
+	 * @param queries			Collection of queries that all have to match
+	 * @param exact				boolean to know whether we are doing exact
+	 * @return ArrayList		ArrayList of Results
+	 */
+	public ArrayList<Result> conjunctiveSearch(Collection<String> queries, boolean exact)
+	{
+		ArrayList<Result> results = findConjunctive(queries, exact);
+		Collections.sort(results);
+		return results;
+	}
+
+	/**
+	 * Conjunctive search that only returns the best results 
+	 * 
+	 * @param queries			Collection of queries that all have to match
+	 * @param exact				boolean to know whether we are doing exact
+	 * @param k					most results to return
+	 * @return ArrayList		best k Results in sorted order
+	 */
+	public ArrayList<Result> conjunctiveSearch(Collection<String> queries, boolean exact, int k)
 	{
-		// Declare our Data Structures when InvertedIndex class is created 
-		index = new TreeMap<>();
-		counts = new TreeMap<String, Integer>();
+		return topResults(findConjunctive(queries, exact), k);
 	}
-	
+
 	/**
-	 * Method to merge another index in to our main 
-	 * index
+	 * Finds the locations that match every query. The queries are 
+	 * planned first and their document ids are intersected starting with 
+	 * the rarest query, so the work depends on the rarest query instead 
+	 * of the most common one, and the common ones are not read at all 
+	 * once nothing is left. Every query has to match, so queries over 
+	 * the posting budget are intersected too, after the others. Only the 
+	 * locations left are scored, counting the hits of every query. 
 	 * 
-	 * @param local			foreign index to be added
+	 * @param queries			Collection of queries that all have to match
+	 * @param exact				boolean to know whether we are doing exact
+	 * @return ArrayList		unsorted ArrayList of Results
 	 */
-	public void addAll(InvertedIndex local)
+	ArrayList<Result> findConjunctive(Collection<String> queries, boolean exact)
 	{
-		for (String word : local.index.keySet())
+		QueryPlan plan = plan(queries, exact);
+
+		if (plan.getSteps().isEmpty() || plan.isMissing())
+		{
+			return new ArrayList<>();
+		}
+
+		// the budget only prunes a search of any word, here every term has to match
+		List<QueryPlan.Step> steps = plan.getAllSteps();
+		int[] candidates = null;
+
+		for (QueryPlan.Step step : steps)
 		{
-			if (this.index.containsKey(word))
+			List<String> words = step.getWords();
+
+			// a partial query matches the union of the words it expands to
+			int[] ids = words.size() == 1 ? documents(words.get(0))
+					: words.stream().flatMapToInt(word -> Arrays.stream(documents(word))).sorted().distinct().toArray();
+
+			candidates = candidates == null ? ids : Intersector.intersect(candidates, ids);
+
+			// the common terms are never read once nothing is left
+			if (candidates.length == 0)
 			{
-				for (String pathway : local.index.get(word).keySet())
-				{
-					if (this.index.get(word).containsKey(pathway))
-					{
-						this.index.get(word).get(pathway).addAll(local.index.get(word).get(pathway));
-					}
-					else
-					{
-						this.index.get(word).put(pathway, local.index.get(word).get(pathway));
-					}
-				}
+				return new ArrayList<>();
 			}
-			else
+		}
+
+		int[] hits = new int[candidates.length];
+
+		for (QueryPlan.Step step : steps)
+		{
+			for (String word : step.getWords())
 			{
-				this.index.put(word, local.index.get(word));
+				addHits(word, candidates, hits);
 			}
 		}
-		
-		for (String pathway : local.counts.keySet())
+
+		// a word matched by several queries is only scored once
+		TreeSet<String> words = new TreeSet<>();
+
+		for (QueryPlan.Step step : steps)
 		{
-			this.counts.put(pathway, this.counts.getOrDefault(pathway, 0) + local.counts.get(pathway));
+			words.addAll(step.getWords());
 		}
-		
+
+		ArrayList<Result> results = new ArrayList<>(candidates.length);
+
+		for (int i = 0; i < candidates.length; i++)
+		{
+			results.add(score(candidates[i], hits[i], words));
+		}
+
+		return results;
 	}
-	
+
 	/**
-	 * Getter method to return the jsonCount object 
-	 * in a safe way where main cant access our data 
-	 * @return jsonCount
+	 * Scores a location found by a conjunctive or proximity search. The 
+	 * score is the share of the words of the location that matched, an 
+	 * index that ranks another way scores the words itself. 
+	 * 
+	 * @param id				document id of the location
+	 * @param hits				number of matches at the location
+	 * @param words				words that were searched for
+	 * @return Result			scored result of the location
 	 */
-	public Map<String, Integer> getCount() {
-		return Collections.unmodifiableMap(counts);
+	Result score(int id, int hits, Collection<String> words)
+	{
+		Result result = new Result(getLocation(id));
+		result.update(hits, wordCount(id));
+		return result;
 	}
 
 	/**
-	 * returns an unmodifiable key set of jsonCount
-	 * @return unmodifiable keyset 
+	 * Returns the words a query matches, the query itself if it is in 
+	 * the index for an exact search or the words it expands to otherwise 
+	 * 
+	 * @param query				query to look up
+	 * @param exact				boolean to know whether we are doing exact
+	 * @return List				words the query matches
 	 */
-	public Set<String> getLocations()
+	List<String> matchingWords(String query, boolean exact)
 	{
-		return Collections.unmodifiableSet(counts.keySet());
+		if (exact)
+		{
+			return index.containsKey(query) ? List.of(query) : List.of();
+		}
+
+		return expand(query);
 	}
 
 	/**
-	 * Returns key set of index object.
-	 * @return Set<string> 
+	 * Returns the number of documents a word is found in 
+	 * 
+	 * @param word				word to look up
+	 * @return int				number of documents with the word
 	 */
-	public Set<String> getWords() {
-		return Collections.unmodifiableSet(index.keySet());
+	int frequency(String word)
+	{
+		TreeMap<Integer, PositionList> postings = index.get(word);
+		return postings == null ? 0 : postings.size();
 	}
 
 	/**
-	 * Returns an unmodifiable set of hits for a word at a particular
-	 * location. 
+	 * Adds the number of times a word is found in each document to the 
+	 * count of that document 
 	 * 
-	 * @param word		word to be searched
-	 * @param location	location of word
-	 * @return positions of word in particular location 
-	 *
+	 * @param word				word to look up
+	 * @param ids				document ids in increasing order
+	 * @param counts			count of each document that is added to
 	 */
-	public Set<Integer> getPositions(String word, String location)
+	void addHits(String word, int[] ids, int[] counts)
 	{
-		if (index.containsKey(word))
+		TreeMap<Integer, PositionList> postings = index.get(word);
+
+		if (postings == null)
 		{
-			if (index.get(word).containsKey(location))
-			{
-				return Collections.unmodifiableSet(index.get(word).get(location));
-			}
-			else
-			{
-				return Collections.emptySet();
-			}
+			return;
 		}
-		else
+
+		for (int i = 0; i < ids.length; i++)
 		{
-			return Collections.emptySet();
+			PositionList list = postings.get(ids[i]);
+
+			if (list != null)
+			{
+				counts[i] += list.size();
+			}
 		}
 	}
 
-	/**
-	 * 
-	 * returns number of hits for a word in a particular file
-	 * 
-	 * @param word		word that is searched	
-	 * @param file		file to be searched
-	 * @return int		number of hits 
+	/**
+	 * Searches for locations where the words of a proximity query are 
+	 * close together, sorted like the results of a regular search. 
 	 * 
+	 * @param query				phrase or NEAR query to search for
+	 * @return ArrayList		ArrayList of Results
 	 */
-	public int numLocation(String word, String file)
+	public ArrayList<Result> proximitySearch(ProximityQuery query)
 	{
-		if (index.containsKey(word))
-		{
-			if (index.get(word).containsKey(file))
-			{
-				return index.get(word).get(file).size();
-			}
-			else 
-			{
-				return 0;
-			}
-		}
-		return 0;
+		ArrayList<Result> results = findProximity(query);
+		Collections.sort(results);
+		return results;
 	}
 
 	/**
-	 * public search function to determine whether we do partial
-	 * or exact and will return an ArrayList of Results. 
+	 * Proximity search that only returns the best results 
 	 * 
-	 * @param queries					Collection of queries 
-	 * @param exact						boolean to know whether we are doing exact
-	 * @return List 					List of Results	objects
+	 * @param query				phrase or NEAR query to search for
+	 * @param k					most results to return
+	 * @return ArrayList		best k Results in sorted order
 	 */
-	public ArrayList<Result> search(Collection<String> queries, boolean exact) {
-		return exact ? exactSearch(queries) : partialSearch(queries);
+	public ArrayList<Result> proximitySearch(ProximityQuery query, int k)
+	{
+		return topResults(findProximity(query), k);
 	}
 
 	/**
-	 * Peforms a partial search of the collection of queries and 
-	 * returns an Array List of Results. 
+	 * Finds the locations where the words of a proximity query are close 
+	 * together. The documents of the words are intersected first, 
+	 * starting with the rarest word, and the positions are only read for 
+	 * the documents that have every word. 
 	 * 
-	 * @param queries			Collection of queries to be searched
-	 * @return ArrayList		ArrayList of Results 
+	 * @param query				phrase or NEAR query to search for
+	 * @return ArrayList		unsorted ArrayList of Results
 	 */
-	public ArrayList<Result> partialSearch(Collection<String> queries) {
+	ArrayList<Result> findProximity(ProximityQuery query)
+	{
+		int[][] documents = new int[query.size()][];
+
+		for (int i = 0; i < query.size(); i++)
+		{
+			documents[i] = documents(query.getWord(i));
+		}
+
+		int[][] rarest = documents.clone();
+		Arrays.sort(rarest, (a, b) -> Integer.compare(a.length, b.length));
+		int[] candidates = rarest[0];
+
+		for (int i = 1; i < rarest.length && candidates.length > 0; i++)
+		{
+			candidates = Intersector.intersect(candidates, rarest[i]);
+		}
+
 		ArrayList<Result> results = new ArrayList<>();
-		Map<String, Result> lookup = new HashMap<>();
+		int[][] positions = new int[query.size()][];
+		TreeSet<String> words = new TreeSet<>(query.getWords());
 
-		for (String query : queries)
+		for (int id : candidates)
 		{
-			for (String stem : index.tailMap(query).keySet())
+			for (int i = 0; i < query.size(); i++)
 			{
-				if (stem.startsWith(query))
-				{
-					searchHelper(stem, lookup, results);
-				}
-				else
+				positions[i] = positions(query.getWord(i), id);
+			}
+
+			int matches = 0;
+
+			for (int start : positions[0])
+			{
+				if (matchesFrom(query, positions, 1, start))
 				{
-				 		break;
+					matches++;
 				}
 			}
-			
+
+			if (matches > 0)
+			{
+				results.add(score(id, matches, words));
+			}
 		}
 
-		Collections.sort(results);
 		return results;
 	}
 
 	/**
-	 * Helper function that exact and partial search utilizes to
-	 * insert in to our ArrayList of Results 
+	 * Checks whether the rest of a proximity query matches after one of 
+	 * its words, galloping to the first position of the next word that 
+	 * can be close enough. 
 	 * 
-	 * @param word 				word to be searched 
-	 * @param lookup			lookup map to check if word is contained.
-	 * @param results			Our ArrayList of results we update
+	 * @param query				phrase or NEAR query to match
+	 * @param positions			sorted positions of each word in the document
+	 * @param word				next word to match
+	 * @param previous			position of the word before it
+	 * @return boolean			whether the rest of the query matches
 	 */
-	private void searchHelper(String word, Map<String, Result> lookup, ArrayList<Result> results)
+	private static boolean matchesFrom(ProximityQuery query, int[][] positions, int word, int previous)
 	{
-		Set<String> locations = index.get(word).keySet();
+		if (word == positions.length)
+		{
+			return true;
+		}
 
-		for (String location : locations)
+		int distance = query.getDistance(word - 1);
+		long low = query.isOrdered() ? (long) previous + 1 : (long) previous - distance;
+		long high = (long) previous + distance;
+		int[] next = positions[word];
+
+		for (int i = Intersector.gallop(next, 0, next.length, (int) Math.max(low, Integer.MIN_VALUE)); i < next.length && next[i] <= high; i++)
 		{
-			if (lookup.containsKey(location))
-			{
-				lookup.get(location).update(word);
-			}
-			else
+			if (next[i] != previous && matchesFrom(query, positions, word + 1, next[i]))
 			{
-				Result result = new Result(location);
-				result.update(word);
-				lookup.put(location, result);
-				results.add(result);
+				return true;
 			}
 		}
-		
+
+		return false;
 	}
 
 	/**
-	 * Performs an exact search given the collection of queries. 
+	 * Returns the document ids of a word in increasing order 
 	 * 
-	 * @param queries			Queries to be searched 
-	 * @return results			ArrayList of results class
+	 * @param word				word to look up
+	 * @return int[]			document ids of the word
 	 */
-	public ArrayList<Result> exactSearch(Collection<String> queries) 
-	{
-		ArrayList<Result> results = new ArrayList<>();
-		Map<String, Result> lookup = new HashMap<>();
+	int[] documents(String word)
+	{
+		TreeMap<Integer, PositionList> postings = index.get(word);
 
-		for (String query : queries)
+		if (postings == null)
 		{
-			if (index.containsKey(query))
-			{
-				searchHelper(query, lookup, results);
-			}
-			
+			return new int[0];
 		}
 
-		Collections.sort(results);
-		return results;
-		
+		return postings.keySet().stream().mapToInt(Integer::intValue).toArray();
+	}
+
+	/**
+	 * Returns the positions of a word in a document in increasing order 
+	 * 
+	 * @param word				word to look up
+	 * @param id				document id to look up
+	 * @return int[]			positions of the word in the document
+	 */
+	int[] positions(String word, int id)
+	{
+		TreeMap<Integer, PositionList> postings = index.get(word);
+		PositionList list = postings == null ? null : postings.get(id);
+		return list == null ? new int[0] : PositionList.toArray(list);
+	}
+
+	/**
+	 * Returns the word count of a document 
+	 * 
+	 * @param id				document id to look up
+	 * @return int				word count of the document
+	 */
+	int wordCount(int id)
+	{
+		return counts.get(id);
+	}
+
+	/**
+	 * Returns the document ids of a word using only the public getters, 
+	 * for indexes that keep their postings in other indexes 
+	 * 
+	 * @param word				word to look up
+	 * @return int[]			document ids of the word in increasing order
+	 */
+	final int[] documentsByLocation(String word)
+	{
+		return getLocations(word).stream().mapToInt(this::getLocationId).filter(id -> id >= 0).sorted().toArray();
+	}
+
+	/**
+	 * Scatters the postings of a word using only the public getters, for 
+	 * indexes that keep their postings in other indexes 
+	 * 
+	 * @param word				word to read the postings of
+	 * @param queries			queries of the batch that match the word
+	 * @param matches			counts of each query of the batch
+	 */
+	final void scatterByLocation(String word, int[] queries, ScoreAccumulator[] matches)
+	{
+		int[] ids = documents(word);
+		int[] hits = new int[ids.length];
+		addHits(word, ids, hits);
+		scatter(ids, hits, 0, ids.length, queries, matches);
+	}
+
+	/**
+	 * Returns the positions of a word in a document using only the public 
+	 * getters, for indexes that keep their postings in other indexes 
+	 * 
+	 * @param word				word to look up
+	 * @param id				document id to look up
+	 * @return int[]			positions of the word in increasing order
+	 */
+	final int[] positionsByLocation(String word, int id)
+	{
+		return getPositions(word, getLocation(id)).stream().mapToInt(Integer::intValue).sorted().toArray();
 	}
 
 	/**
 	 * Stores information on matches for searches
 	 * @author hayde
 	 */
-	public class Result implements Comparable<Result> {
+	public static class Result implements Comparable<Result> {
 
 		/**
 		 * variable to store file path
@@ -345,12 +1402,26 @@ public class InvertedIndex
 		/**
 		 * Updates the count and score of the Result class
 		 * 
-		 * @param word		used to update our count and score	
+		 * @param hits		number of matches to add to our count
+		 * @param total		total word count of the location used for our score
 		 */
-		private void update(String word)
+		void update(int hits, int total)
 		{
-			this.count += index.get(word).get(where).size();
-			this.score = (double) count / (double) counts.get(where);
+			this.count += hits;
+			this.score = (double) count / (double) total;
+		}
+
+		/**
+		 * Adds matches that bring their own score, used by rankings 
+		 * like {@link Bm25} where the score is a sum over the words 
+		 * 
+		 * @param hits		number of matches to add to our count
+		 * @param score		score of the matches to add to our score
+		 */
+		void addScore(int hits, double score)
+		{
+			this.count += hits;
+			this.score += score;
 		}
 	}
 
@@ -366,7 +1437,14 @@ public class InvertedIndex
 	{
 		if (index.containsKey(word)) 
 		{
-			return Collections.unmodifiableSet(index.get(word).keySet());
+			TreeSet<String> named = new TreeSet<>();
+			
+			for (int id : index.get(word).keySet())
+			{
+				named.add(locations.get(id));
+			}
+			
+			return Collections.unmodifiableSet(named);
 		}
 		else
 		{
@@ -383,9 +1461,132 @@ public class InvertedIndex
 	 * 
 	 */
 	public void toJson(Path path) throws IOException {
-		JsonWriter.asNestedObjects(index, path);
+		try (BufferedWriter writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8)) {
+			writer.write("{\n");
+			Iterator<String> iter = index.keySet().iterator();
+			
+			if (iter.hasNext())
+			{
+				nestedJson(iter.next(), writer);
+			}
+			while (iter.hasNext())
+			{
+				writer.write(",\n");
+				nestedJson(iter.next(), writer);
+			}
+			writer.write('\n');
+			writer.write("}\n");
+		}
+	}
+
+	/**
+	 * Writes the postings of a single word, translating the document ids 
+	 * back to locations so they are sorted by name in the output. 
+	 * 
+	 * @param word		word to be written
+	 * @param writer	writer to write to
+	 * @throws IOException
+	 */
+	private void nestedJson(String word, Writer writer) throws IOException
+	{
+		TreeMap<String, PositionList> named = new TreeMap<>();
+		
+		for (Map.Entry<Integer, PositionList> entry : index.get(word).entrySet())
+		{
+			named.put(locations.get(entry.getKey()), entry.getValue());
+		}
+		
+		JsonWriter.quote(word, writer, 1);
+		writer.write(": ");
+		JsonWriter.asNestedObject(named, writer, 1);
 	}
 
+	/**
+	 * Creates a read-only snapshot of the index once building is finished. 
+	 * The snapshot stores the words and postings in flat sorted arrays 
+	 * and needs no locking, see {@link FrozenInvertedIndex}. 
+	 * 
+	 * @return FrozenInvertedIndex		snapshot of this index
+	 */
+	public FrozenInvertedIndex freeze()
+	{
+		int postings = 0;
+		long bytes = 0;
+		
+		for (TreeMap<Integer, PositionList> word : index.values())
+		{
+			postings += word.size();
+			
+			for (PositionList list : word.values())
+			{
+				bytes += list.encodedLength();
+			}
+		}
+		
+		String[] terms = index.keySet().toArray(new String[0]);
+		int[] termStart = new int[terms.length + 1];
+		int[] docs = new int[postings];
+		int[] hits = new int[postings];
+		int[] positionStart = new int[postings + 1];
+		byte[] positions = new byte[Math.toIntExact(bytes)];
+		
+		int term = 0;
+		int posting = 0;
+		int offset = 0;
+		
+		for (TreeMap<Integer, PositionList> word : index.values())
+		{
+			termStart[term++] = posting;
+			
+			for (Map.Entry<Integer, PositionList> entry : word.entrySet())
+			{
+				docs[posting] = entry.getKey();
+				hits[posting] = entry.getValue().size();
+				positionStart[posting] = offset;
+				offset += entry.getValue().copyTo(positions, offset);
+				posting++;
+			}
+		}
+		termStart[term] = posting;
+		positionStart[posting] = offset;
+		
+		int[] lengths = new int[counts.size()];
+		
+		for (int id = 0; id < lengths.length; id++)
+		{
+			lengths[id] = counts.get(id);
+		}
+		
+		return limited(new FrozenInvertedIndex(terms, termStart, docs, hits, positionStart, positions, 
+				locations.toArray(new String[0]), lengths));
+	}
+	
+	/**
+	 * Gives a new snapshot the same search limits as this index 
+	 * 
+	 * @param frozen					snapshot of this index 
+	 * @return FrozenInvertedIndex		the snapshot 
+	 */
+	FrozenInvertedIndex limited(FrozenInvertedIndex frozen)
+	{
+		frozen.setMaxExpansions(maxExpansions);
+		frozen.setPostingBudget(postingBudget);
+		return frozen;
+	}
+	
+	/**
+	 * Saves a snapshot of the index to a binary index file that can be 
+	 * loaded with {@link FrozenInvertedIndex#load(Path)}. 
+	 * 
+	 * @param path		File to be written to
+	 * @throws IOException
+	 * @see IndexFile
+	 */
+	public void save(Path path) throws IOException
+	{
+		freeze().save(path);
+	}
+	
 	/**
 	 * public class to addIndex one at a time. 
 	 * Called by addAll, inserts word in to index,
@@ -400,18 +1601,14 @@ public class InvertedIndex
 	 */
 	public void addIndex(String word, String pretty, int num)
 	{
-		index.putIfAbsent(word, new TreeMap<String, TreeSet<Integer>>());
-		index.get(word).putIfAbsent(pretty, new TreeSet<Integer>());
-		index.get(word).get(pretty).add(num);
+		int id = assignId(pretty);
+		
+		index.putIfAbsent(word, new TreeMap<Integer, PositionList>());
+		index.get(word).putIfAbsent(id, new PositionList());
+		index.get(word).get(id).add(num);
 
-		if (counts.get(pretty) == null)
-		{
-			counts.put(pretty, num);
-		}
-		else
-		{
-			counts.put(pretty, Math.max(counts.get(pretty), num));
-		}
+		counts.set(id, Math.max(counts.get(id), num));
+		changed();
 	}
 	
 }
@@ -1,10 +1,13 @@
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.nio.charset.StandardCharsets;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.file.FileVisitOption;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.function.Predicate;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
@@ -31,6 +34,17 @@ public class InvertedIndexBuilder {
 	public static final Predicate<Path> IS_TEXT = path -> (path.toString().toLowerCase().endsWith(".txt")
 			|| path.toString().toLowerCase().endsWith(".text")) && Files.isRegularFile(path);
 
+	/**
+	 * files at least this many bytes are memory mapped instead of read, 
+	 * since mapping a small file costs more than reading it 
+	 */
+	public static final int MAP_THRESHOLD = 1 << 20;
+
+	/**
+	 * most bytes of a file mapped at once 
+	 */
+	public static final int WINDOW = 1 << 30;
+
 	/**
 	 * private index object used further protect data from main. 
 	 */
@@ -74,6 +88,17 @@ public class InvertedIndexBuilder {
 		}
 	}
 	
+	/**
+	 * Returns a read-only snapshot of everything built so far, to search 
+	 * once building is done 
+	 * 
+	 * @return FrozenInvertedIndex		snapshot of the built index
+	 */
+	public FrozenInvertedIndex freeze()
+	{
+		return index.freeze();
+	}
+	
 	/**
 	 * Class will walk and read an inputPath and return an ArrayList of Paths
 	 * 
@@ -95,8 +120,11 @@ public class InvertedIndexBuilder {
 
 	/**
 	 * method to add only one path to our inverted Index, accepts a path to an object
-	 * and index object in order to call addIndex to actually inject data structure. 
-	 * Reads file line by line and parses file for 
+	 * and index object in order to call addDocument to actually inject data structure. 
+	 * Splits the bytes of the file without decoding the ASCII lines and 
+	 * collects the positions of every stem so the whole file is added to 
+	 * the index at once. Large files are mapped a window at a time, with 
+	 * each window ending at a line break. 
 	 * 
 	 * @param inputPath 		File we are reading 
 	 * @param index 			index passed in
@@ -104,23 +132,81 @@ public class InvertedIndexBuilder {
 	 */
 	public static void addFile(Path inputPath, InvertedIndex index) throws Exception
 	{
-		Stemmer stemmer = new SnowballStemmer(DEFAULT);
-		try (BufferedReader reader = Files.newBufferedReader(inputPath, StandardCharsets.UTF_8)) {
-			String raw;
-			int count = 0;
-			String pretty = inputPath.toString();
+		try (FileChannel channel = FileChannel.open(inputPath, StandardOpenOption.READ)) {
+			HashMap<String, PositionList> words = new HashMap<>();
+			int count = addWords(channel, 0, channel.size(), words);
 			
-			while ((raw = reader.readLine())!= null)
+			index.addDocument(inputPath.toString(), words, count);
+		}
+	}
+	
+	/**
+	 * Collects the positions of every stem in part of a file, numbering 
+	 * the words from one. The part should start at the start of a line 
+	 * and end at the end of one. 
+	 * 
+	 * @param channel			file to read 
+	 * @param start				offset of the first byte 
+	 * @param end				offset after the last byte 
+	 * @param words				positions of each stem 
+	 * @return int				number of words in the part 
+	 * @throws IOException 
+	 */
+	public static int addWords(FileChannel channel, long start, long end, Map<String, PositionList> words) throws IOException
+	{
+		Stemmer stemmer = StemCache.SHARED;
+		ByteTokenizer tokenizer = new ByteTokenizer();
+		int count = 0;
+		long offset = start;
+		
+		while (offset < end)
+		{
+			int length = (int) Math.min(end - offset, WINDOW);
+			ByteBuffer bytes = (end - start < MAP_THRESHOLD) ? read(channel, offset, length) : channel.map(FileChannel.MapMode.READ_ONLY, offset, length);
+			
+			if (offset + length < end)
 			{
-				String tokens[] = TextParser.parse(raw);
+				int split = ByteTokenizer.lastBreak(bytes, 0, length);
 				
-				for (String token : tokens)
+				if (split <= 0)
 				{
-					count++;
-					
-					index.addIndex(stemmer.stem(token).toString(), pretty, count);
+					throw new IOException("No whitespace in " + WINDOW + " bytes at " + offset);
 				}
+				length = split;
 			}
+			
+			tokenizer.reset(bytes, 0, length);
+			
+			while (tokenizer.next())
+			{
+				count++;
+				
+				words.computeIfAbsent(stemmer.stem(tokenizer.token()).toString(), stem -> new PositionList()).add(count);
+			}
+			offset += length;
+		}
+		
+		return count;
+	}
+	
+	/**
+	 * Reads part of a small file in to memory 
+	 * 
+	 * @param channel			file to read 
+	 * @param offset			offset of the first byte 
+	 * @param length			number of bytes to read 
+	 * @return ByteBuffer		bytes of the file 
+	 * @throws IOException 
+	 */
+	private static ByteBuffer read(FileChannel channel, long offset, int length) throws IOException
+	{
+		ByteBuffer bytes = ByteBuffer.allocate(length);
+		
+		while (bytes.hasRemaining() && channel.read(bytes, offset + bytes.position()) >= 0)
+		{
+			// keep reading until the buffer is full 
 		}
+		bytes.flip();
+		return bytes;
 	}
 }
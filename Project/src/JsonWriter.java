@@ -7,6 +7,7 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.text.DecimalFormat;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Iterator;
 import java.util.Map;
 import java.util.Map.Entry;
@@ -40,7 +41,7 @@ public class JsonWriter {
 	 * @param level    the initial indent level
 	 * @throws IOException
 	 */
-	public static void asArray(TreeSet<Integer> elements, Writer writer, int level) throws IOException  {
+	public static void asArray(Collection<Integer> elements, Writer writer, int level) throws IOException  {
 		Iterator<Integer> iter = elements.iterator();
 		writer.write('[');
 		writer.write('\n');
@@ -66,9 +67,9 @@ public class JsonWriter {
 	 * @param path     the file path to use
 	 * @throws IOException
 	 *
-	 * @see #asArray(TreeSet, Writer, int)
+	 * @see #asArray(Collection, Writer, int)
 	 */
-	public static void asArray(TreeSet<Integer> elements, Path path) throws IOException {
+	public static void asArray(Collection<Integer> elements, Path path) throws IOException {
 		try (BufferedWriter writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8)) {
 			asArray(elements, writer, 0);
 		}
@@ -81,9 +82,9 @@ public class JsonWriter {
 	 * @return a {@link String} containing the elements in pretty JSON format
 	 * @throws IOException 
 	 *
-	 * @see #asArray(TreeSet, Writer, int)
+	 * @see #asArray(Collection, Writer, int)
 	 */
-	public static String asArray(TreeSet<Integer> elements) throws IOException {
+	public static String asArray(Collection<Integer> elements) throws IOException {
 		StringWriter writer = new StringWriter();
 		asArray(elements, writer, 0);
 		return writer.toString();
@@ -163,7 +164,7 @@ public class JsonWriter {
 	 * @param level    the initial indent level
 	 * @throws IOException
 	 */
-	public static void asNestedObject(TreeMap<String, TreeSet<Integer>> elements, Writer writer, int level) throws IOException {
+	public static void asNestedObject(Map<String, ? extends Collection<Integer>> elements, Writer writer, int level) throws IOException {
 		writer.write("{\n");
 		Iterator<String> iter = elements.keySet().iterator();
 		indent(writer, 1);
@@ -195,9 +196,9 @@ public class JsonWriter {
 	 * @param path     the file path to use
 	 * @throws IOException
 	 *
-	 * @see #asNestedObject(TreeMap, Writer, int)
+	 * @see #asNestedObject(Map, Writer, int)
 	 */
-	public static void asNestedObject(TreeMap<String, TreeSet<Integer>> elements, Path path) throws IOException {
+	public static void asNestedObject(Map<String, ? extends Collection<Integer>> elements, Path path) throws IOException {
 		try (BufferedWriter writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8)) {
 			asNestedObject(elements, writer, 0);
 		}
@@ -209,9 +210,9 @@ public class JsonWriter {
 	 * @param elements the elements to use
 	 * @return a {@link String} containing the elements in pretty JSON format
 	 *
-	 * @see #asNestedObject(TreeMap, Writer, int)
+	 * @see #asNestedObject(Map, Writer, int)
 	 */
-	public static String asNestedObject(TreeMap<String, TreeSet<Integer>> elements) {
+	public static String asNestedObject(Map<String, ? extends Collection<Integer>> elements) {
 		try {
 			StringWriter writer = new StringWriter();
 			asNestedObject(elements, writer, 0);
@@ -335,7 +336,9 @@ public class JsonWriter {
 	}
 
 	/**
-	 * Writes the element surrounded by {@code " "} quotation marks.
+	 * Writes the element surrounded by {@code " "} quotation marks. Quotation
+	 * marks and backslashes in the element are escaped, since phrase queries
+	 * keep their quotes.
 	 *
 	 * @param element the element to write
 	 * @param writer  the writer to use
@@ -343,7 +346,7 @@ public class JsonWriter {
 	 */
 	public static void quote(String element, Writer writer) throws IOException {
 		writer.write('"');
-		writer.write(element);
+		writer.write(element.replace("\\", "\\\\").replace("\"", "\\\""));
 		writer.write('"');
 	}
 
@@ -390,10 +393,39 @@ public class JsonWriter {
 	 * 
 	 */
 	public static void queryJson(Writer writer, TreeMap<String, ArrayList<InvertedIndex.Result>> queryJson, int level) throws Exception
+	{
+		queryJson(writer, queryJson.entrySet().iterator(), level);
+	}
+
+	/**
+	 * public method that writes the results of each query as the iterator 
+	 * returns them, so they do not have to be in memory together. 
+	 * 
+	 * @param path					path to write to
+	 * @param queryJson		results of each query in sorted order
+	 * @throws Exception 
+	 */
+	public static void queryJson(Path path, Iterator<Entry<String, ArrayList<InvertedIndex.Result>>> queryJson) throws Exception
+	{
+		try (BufferedWriter writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8)) {
+			queryJson(writer, queryJson, 0);
+		}
+	}
+
+	/**
+	 * method that writes brackets and calls asSearch for each 
+	 * entry the iterator returns. 
+	 * 
+	 * @param writer 		writer object to write to file
+	 * @param iter			results of each query in sorted order
+	 * @param level			current level of indentation
+	 * @throws Exception 
+	 * 
+	 */
+	public static void queryJson(Writer writer, Iterator<Entry<String, ArrayList<InvertedIndex.Result>>> iter, int level) throws Exception
 	{
 		writer.write('{');
 		writer.write('\n');
-		Iterator<Entry<String, ArrayList<InvertedIndex.Result>>> iter = queryJson.entrySet().iterator();
 		
 		if (iter.hasNext())
 		{
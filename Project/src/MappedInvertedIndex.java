@@ -0,0 +1,825 @@
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.function.Predicate;
+
+/**
+ * Read-only index that searches an {@link IndexFile} directly through
+ * memory-mapped pages instead of loading it on to the heap. Only the
+ * words, locations and positions a search actually touches are decoded,
+ * so the index takes almost no heap and adds nothing for the garbage
+ * collector to trace, while the operating system keeps the hot pages of
+ * the file cached.
+ *
+ * The searches give the same results as {@link FrozenInvertedIndex}, which
+ * uses the same layout in heap arrays.
+ *
+ * @author hayde
+ * @see IndexFile
+ */
+public class MappedInvertedIndex extends InvertedIndex
+{
+	/**
+	 * file the index is mapped from
+	 */
+	private final Path path;
+
+	/**
+	 * number of words in the index
+	 */
+	private final int terms;
+
+	/**
+	 * number of documents in the index
+	 */
+	private final int documents;
+
+	/**
+	 * first posting of each word
+	 */
+	private final Section termStart;
+
+	/**
+	 * document id of each posting
+	 */
+	private final Section docs;
+
+	/**
+	 * number of positions of each posting
+	 */
+	private final Section hits;
+
+	/**
+	 * offset of the encoded positions of each posting
+	 */
+	private final Section positionStart;
+
+	/**
+	 * word count of each document
+	 */
+	private final Section lengths;
+
+	/**
+	 * document ids sorted by location
+	 */
+	private final Section byName;
+
+	/**
+	 * offset of each word in the word bytes
+	 */
+	private final Section termOffsets;
+
+	/**
+	 * offset of each location in the location bytes
+	 */
+	private final Section locationOffsets;
+
+	/**
+	 * UTF-8 words in sorted order
+	 */
+	private final Section words;
+
+	/**
+	 * UTF-8 locations in document id order
+	 */
+	private final Section locations;
+
+	/**
+	 * encoded positions of every posting
+	 */
+	private final Section positions;
+
+	/**
+	 * Constructor that maps every section of an index file
+	 *
+	 * @param path			index file to map
+	 * @throws IOException	if the file is not an index file
+	 */
+	public MappedInvertedIndex(Path path) throws IOException
+	{
+		super();
+		this.path = path;
+
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ))
+		{
+			if (channel.size() < IndexFile.HEADER)
+			{
+				throw new IOException(path + " is not an index file.");
+			}
+
+			ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, IndexFile.HEADER);
+			int[] header = new int[IndexFile.HEADER / Integer.BYTES];
+			buffer.asIntBuffer().get(header);
+			IndexFile.checkHeader(header, channel.size(), path);
+
+			terms = header[2];
+			documents = header[4];
+			long postings = header[3];
+			long offset = IndexFile.HEADER;
+
+			termStart = new Section(channel, offset, (terms + 1L) * Integer.BYTES);
+			docs = new Section(channel, offset += termStart.length, postings * Integer.BYTES);
+			hits = new Section(channel, offset += docs.length, postings * Integer.BYTES);
+			positionStart = new Section(channel, offset += hits.length, (postings + 1) * Integer.BYTES);
+			lengths = new Section(channel, offset += positionStart.length, (long) documents * Integer.BYTES);
+			byName = new Section(channel, offset += lengths.length, (long) documents * Integer.BYTES);
+			termOffsets = new Section(channel, offset += byName.length, (terms + 1L) * Integer.BYTES);
+			locationOffsets = new Section(channel, offset += termOffsets.length, (documents + 1L) * Integer.BYTES);
+			words = new Section(channel, offset += locationOffsets.length, header[5]);
+			locations = new Section(channel, offset += words.length, header[6]);
+			positions = new Section(channel, offset += locations.length, header[7]);
+
+			IndexFile.checkSections(header, termStart::getInt, docs::getInt, hits::getInt, positionStart::getInt,
+					byName::getInt, termOffsets::getInt, locationOffsets::getInt, positions::getByte, path);
+			IndexFile.checkWords(this::term, terms, path);
+		}
+	}
+
+	/**
+	 * Returns the word at an index of the sorted words
+	 *
+	 * @param term			index of the word
+	 * @return String		the decoded word
+	 */
+	private String term(int term)
+	{
+		int start = termOffsets.getInt(term);
+		return words.getString(start, termOffsets.getInt(term + 1) - start);
+	}
+
+	/**
+	 * Returns the index of the first word that is not less than the query,
+	 * which is the number of words if every word is less.
+	 *
+	 * @param query			word to look for
+	 * @return int			index of the first word not less than the query
+	 */
+	private int lowerBound(String query)
+	{
+		int low = 0;
+		int high = terms;
+
+		while (low < high)
+		{
+			int middle = (low + high) >>> 1;
+
+			if (term(middle).compareTo(query) < 0)
+			{
+				low = middle + 1;
+			}
+			else
+			{
+				high = middle;
+			}
+		}
+
+		return low;
+	}
+
+	/**
+	 * Returns the words a partial search query expands to. The matching
+	 * words are found with two binary searches, so only a few words are
+	 * decoded however many match.
+	 *
+	 * @param query			prefix to expand
+	 * @return int[]		indexes of the matching words, at most {@link #getMaxExpansions()}
+	 */
+	private int[] expand(String query)
+	{
+		int start = lowerBound(query);
+		int low = start;
+		int high = terms;
+
+		while (low < high)
+		{
+			int middle = (low + high) >>> 1;
+
+			if (term(middle).startsWith(query))
+			{
+				low = middle + 1;
+			}
+			else
+			{
+				high = middle;
+			}
+		}
+
+		int[] expanded = new int[Math.min(low - start, getMaxExpansions())];
+		Arrays.setAll(expanded, i -> start + i);
+		return expanded;
+	}
+
+	/**
+	 * Returns the index of a word in our sorted words or -1
+	 *
+	 * @param word			word to find
+	 * @return int			index of the word or -1
+	 */
+	private int findTerm(String word)
+	{
+		int term = lowerBound(word);
+		return term < terms && term(term).equals(word) ? term : -1;
+	}
+
+	/**
+	 * Returns the posting of a word at a location or -1
+	 *
+	 * @param word			word to find
+	 * @param location		location to find
+	 * @return int			offset of the posting or -1
+	 */
+	private int findPosting(String word, String location)
+	{
+		int term = findTerm(word);
+		int id = getLocationId(location);
+
+		if (term < 0 || id < 0)
+		{
+			return -1;
+		}
+
+		return findPosting(term, id);
+	}
+
+	/**
+	 * Returns the posting of a term at a document id or -1
+	 *
+	 * @param term			index of the word
+	 * @param id			document id to find
+	 * @return int			offset of the posting or -1
+	 */
+	private int findPosting(int term, int id)
+	{
+		int low = termStart.getInt(term);
+		int high = termStart.getInt(term + 1) - 1;
+
+		while (low <= high)
+		{
+			int middle = (low + high) >>> 1;
+			int doc = docs.getInt(middle);
+
+			if (doc < id)
+			{
+				low = middle + 1;
+			}
+			else if (doc > id)
+			{
+				high = middle - 1;
+			}
+			else
+			{
+				return middle;
+			}
+		}
+
+		return -1;
+	}
+
+	/**
+	 * Decodes the positions of a posting
+	 *
+	 * @param posting		offset of the posting
+	 * @return PositionList	positions of the posting
+	 */
+	private PositionList positions(int posting)
+	{
+		PositionList list = new PositionList();
+		int offset = positionStart.getInt(posting);
+		int previous = 0;
+
+		for (int i = hits.getInt(posting); i > 0; i--)
+		{
+			int value = 0;
+			int shift = 0;
+			byte b;
+
+			do
+			{
+				b = positions.getByte(offset++);
+				value |= (b & 0x7F) << shift;
+				shift += 7;
+			}
+			while (b < 0);
+
+			previous += value;
+			list.add(previous);
+		}
+
+		return list;
+	}
+
+	@Override
+	public int getLocationId(String location)
+	{
+		int low = 0;
+		int high = documents - 1;
+
+		while (low <= high)
+		{
+			int middle = (low + high) >>> 1;
+			int id = byName.getInt(middle);
+			int compare = getLocation(id).compareTo(location);
+
+			if (compare < 0)
+			{
+				low = middle + 1;
+			}
+			else if (compare > 0)
+			{
+				high = middle - 1;
+			}
+			else
+			{
+				return id;
+			}
+		}
+
+		return -1;
+	}
+
+	@Override
+	public String getLocation(int id)
+	{
+		int start = locationOffsets.getInt(id);
+		return locations.getString(start, locationOffsets.getInt(id + 1) - start);
+	}
+
+	@Override
+	public Map<String, Integer> getCount()
+	{
+		TreeMap<String, Integer> named = new TreeMap<>();
+
+		for (int id = 0; id < documents; id++)
+		{
+			named.put(getLocation(id), lengths.getInt(id));
+		}
+
+		return Collections.unmodifiableMap(named);
+	}
+
+	@Override
+	public Set<String> getLocations()
+	{
+		TreeSet<String> named = new TreeSet<>();
+
+		for (int id = 0; id < documents; id++)
+		{
+			named.add(getLocation(id));
+		}
+
+		return Collections.unmodifiableSet(named);
+	}
+
+	@Override
+	public Set<String> getWords()
+	{
+		TreeSet<String> named = new TreeSet<>();
+
+		for (int term = 0; term < terms; term++)
+		{
+			named.add(term(term));
+		}
+
+		return Collections.unmodifiableSet(named);
+	}
+
+	@Override
+	public Set<Integer> getPositions(String word, String location)
+	{
+		int posting = findPosting(word, location);
+		return posting < 0 ? Collections.emptySet() : Collections.unmodifiableSet(positions(posting));
+	}
+
+	@Override
+	public int numLocation(String word, String file)
+	{
+		int posting = findPosting(word, file);
+		return posting < 0 ? 0 : hits.getInt(posting);
+	}
+
+	@Override
+	public Set<String> getLocations(String word)
+	{
+		int term = findTerm(word);
+
+		if (term < 0)
+		{
+			return Collections.emptySet();
+		}
+
+		TreeSet<String> named = new TreeSet<>();
+
+		for (int p = termStart.getInt(term); p < termStart.getInt(term + 1); p++)
+		{
+			named.add(getLocation(docs.getInt(p)));
+		}
+
+		return Collections.unmodifiableSet(named);
+	}
+
+	@Override
+	List<String> matchingWords(String query, boolean exact)
+	{
+		if (exact)
+		{
+			return findTerm(query) < 0 ? List.of() : List.of(query);
+		}
+
+		ArrayList<String> words = new ArrayList<>();
+
+		for (int term : expand(query))
+		{
+			words.add(term(term));
+		}
+
+		return words;
+	}
+
+	@Override
+	void addHits(String word, int[] ids, int[] counts)
+	{
+		int term = findTerm(word);
+
+		if (term < 0)
+		{
+			return;
+		}
+
+		for (int i = 0; i < ids.length; i++)
+		{
+			int posting = findPosting(term, ids[i]);
+
+			if (posting >= 0)
+			{
+				counts[i] += hits.getInt(posting);
+			}
+		}
+	}
+
+	@Override
+	void scatter(String word, int[] queries, ScoreAccumulator[] matches)
+	{
+		int term = findTerm(word);
+
+		if (term < 0)
+		{
+			return;
+		}
+
+		int start = termStart.getInt(term);
+		int[] ids = new int[termStart.getInt(term + 1) - start];
+		int[] found = new int[ids.length];
+
+		for (int i = 0; i < ids.length; i++)
+		{
+			ids[i] = docs.getInt(start + i);
+			found[i] = hits.getInt(start + i);
+		}
+
+		scatter(ids, found, 0, ids.length, queries, matches);
+	}
+
+	@Override
+	int frequency(String word)
+	{
+		int term = findTerm(word);
+		return term < 0 ? 0 : termStart.getInt(term + 1) - termStart.getInt(term);
+	}
+
+	@Override
+	int[] documents(String word)
+	{
+		int term = findTerm(word);
+
+		if (term < 0)
+		{
+			return new int[0];
+		}
+
+		int start = termStart.getInt(term);
+		int[] ids = new int[termStart.getInt(term + 1) - start];
+
+		for (int i = 0; i < ids.length; i++)
+		{
+			ids[i] = docs.getInt(start + i);
+		}
+
+		return ids;
+	}
+
+	@Override
+	int[] positions(String word, int id)
+	{
+		int term = findTerm(word);
+		int posting = term < 0 ? -1 : findPosting(term, id);
+		return posting < 0 ? new int[0] : PositionList.toArray(positions(posting));
+	}
+
+	@Override
+	int wordCount(int id)
+	{
+		return lengths.getInt(id);
+	}
+
+	@Override
+	ArrayList<Result> findResults(Collection<String> queries, boolean exact)
+	{
+		return accumulate(queries, exact).results(this::getLocation, lengths::getInt);
+	}
+
+	@Override
+	ArrayList<Result> findTop(Collection<String> queries, boolean exact, int k)
+	{
+		return accumulate(queries, exact).top(k, this::getLocation, lengths::getInt);
+	}
+
+	/**
+	 * Adds up the matches of the queries by document id, found with a
+	 * binary search of the mapped words for each query.
+	 *
+	 * @param queries			Collection of queries to be searched
+	 * @param exact				boolean to know whether we are doing exact
+	 * @return ScoreAccumulator	matches of each document id
+	 */
+	private ScoreAccumulator accumulate(Collection<String> queries, boolean exact)
+	{
+		ScoreAccumulator matches = ScoreAccumulator.get(documents);
+
+		for (String query : queries)
+		{
+			int[] words = exact ? new int[] { findTerm(query) } : expand(query);
+
+			for (int term : words)
+			{
+				if (term < 0)
+				{
+					continue;
+				}
+
+				int end = termStart.getInt(term + 1);
+
+				for (int p = termStart.getInt(term); p < end; p++)
+				{
+					matches.add(docs.getInt(p), hits.getInt(p));
+				}
+			}
+		}
+
+		return matches;
+	}
+
+	/**
+	 * Passes every posting to the consumer straight from the mapped
+	 * sections, decoding one word and one posting at a time.
+	 *
+	 * @param consumer		consumer of each word, location and positions
+	 */
+	@Override
+	public void forEachPosting(PostingConsumer consumer)
+	{
+		for (int term = 0; term < terms; term++)
+		{
+			String word = term(term);
+
+			for (int p = termStart.getInt(term); p < termStart.getInt(term + 1); p++)
+			{
+				consumer.accept(word, getLocation(docs.getInt(p)), positions(p));
+			}
+		}
+	}
+
+	@Override
+	public void countMatches(Collection<String> queries, boolean exact, Map<String, Integer> matches)
+	{
+		for (String query : queries)
+		{
+			int[] expanded = exact ? new int[] { findTerm(query) } : expand(query);
+
+			for (int term : expanded)
+			{
+				if (term < 0)
+				{
+					continue;
+				}
+
+				for (int p = termStart.getInt(term); p < termStart.getInt(term + 1); p++)
+				{
+					matches.merge(getLocation(docs.getInt(p)), hits.getInt(p), Integer::sum);
+				}
+			}
+		}
+	}
+
+	@Override
+	public void toJson(Path path) throws IOException
+	{
+		try (BufferedWriter writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8)) {
+			writer.write("{\n");
+
+			for (int term = 0; term < terms; term++)
+			{
+				if (term > 0)
+				{
+					writer.write(",\n");
+				}
+				nestedJson(term, writer);
+			}
+			writer.write('\n');
+			writer.write("}\n");
+		}
+	}
+
+	/**
+	 * Writes the postings of a single word sorted by location.
+	 *
+	 * @param term		index of the word to be written
+	 * @param writer	writer to write to
+	 * @throws IOException
+	 */
+	private void nestedJson(int term, Writer writer) throws IOException
+	{
+		TreeMap<String, PositionList> named = new TreeMap<>();
+
+		for (int p = termStart.getInt(term); p < termStart.getInt(term + 1); p++)
+		{
+			named.put(getLocation(docs.getInt(p)), positions(p));
+		}
+
+		JsonWriter.quote(term(term), writer, 1);
+		writer.write(": ");
+		JsonWriter.asNestedObject(named, writer, 1);
+	}
+
+	/**
+	 * Saves the index by copying the mapped file.
+	 *
+	 * @param path		file to write to
+	 * @throws IOException
+	 */
+	@Override
+	public void save(Path path) throws IOException
+	{
+		if (!Files.exists(path) || !Files.isSameFile(this.path, path))
+		{
+			Files.copy(this.path, path, StandardCopyOption.REPLACE_EXISTING);
+		}
+	}
+
+	/**
+	 * Loads the mapped file in to a heap snapshot.
+	 *
+	 * @return FrozenInvertedIndex		snapshot of this index
+	 */
+	@Override
+	public FrozenInvertedIndex freeze()
+	{
+		try
+		{
+			return IndexFile.read(path);
+		}
+		catch (IOException e)
+		{
+			throw new IllegalStateException("Unable to read " + path, e);
+		}
+	}
+
+	/**
+	 * The mapped index cannot be changed.
+	 *
+	 * @throws UnsupportedOperationException always
+	 */
+	@Override
+	public void addIndex(String word, String pretty, int num)
+	{
+		throw new UnsupportedOperationException("A mapped index cannot be changed.");
+	}
+
+	/**
+	 * The mapped index cannot be changed.
+	 *
+	 * @throws UnsupportedOperationException always
+	 */
+	@Override
+	public void addDocument(String location, Map<String, PositionList> words, int length)
+	{
+		throw new UnsupportedOperationException("A mapped index cannot be changed.");
+	}
+
+	/**
+	 * The mapped index cannot be changed.
+	 *
+	 * @throws UnsupportedOperationException always
+	 */
+	@Override
+	public void addAll(InvertedIndex local)
+	{
+		throw new UnsupportedOperationException("A mapped index cannot be changed.");
+	}
+
+	/**
+	 * The mapped index cannot be changed.
+	 *
+	 * @throws UnsupportedOperationException always
+	 */
+	@Override
+	public void addAll(InvertedIndex local, Predicate<String> words)
+	{
+		throw new UnsupportedOperationException("A mapped index cannot be changed.");
+	}
+
+	/**
+	 * A section of the index file mapped in to memory. Every size in the
+	 * header is an int, so each section fits in a single mapping. Only
+	 * absolute reads are used, which makes a section safe to read from
+	 * several threads.
+	 */
+	private static class Section
+	{
+		/**
+		 * mapped bytes of the section
+		 */
+		private final MappedByteBuffer buffer;
+
+		/**
+		 * length of the section in bytes
+		 */
+		private final int length;
+
+		/**
+		 * Constructor that maps a section of the file
+		 *
+		 * @param channel		channel of the file
+		 * @param start			offset of the section in the file
+		 * @param length		length of the section in bytes
+		 * @throws IOException	if the section is too large to map
+		 */
+		public Section(FileChannel channel, long start, long length) throws IOException
+		{
+			if (length > Integer.MAX_VALUE)
+			{
+				throw new IOException("Unable to map an index file section of " + length + " bytes.");
+			}
+
+			this.length = (int) length;
+			this.buffer = channel.map(FileChannel.MapMode.READ_ONLY, start, length);
+		}
+
+		/**
+		 * Returns the byte at an offset of the section
+		 *
+		 * @param offset		offset in bytes
+		 * @return byte			the byte
+		 */
+		public byte getByte(int offset)
+		{
+			return buffer.get(offset);
+		}
+
+		/**
+		 * Returns the int at an index of the section
+		 *
+		 * @param index			index of the int
+		 * @return int			the int
+		 */
+		public int getInt(int index)
+		{
+			return buffer.getInt(index * Integer.BYTES);
+		}
+
+		/**
+		 * Decodes a UTF-8 string stored in the section
+		 *
+		 * @param offset		offset of the string in bytes
+		 * @param size			length of the string in bytes
+		 * @return String		the decoded string
+		 */
+		public String getString(int offset, int size)
+		{
+			byte[] bytes = new byte[size];
+
+			for (int i = 0; i < size; i++)
+			{
+				bytes[i] = getByte(offset + i);
+			}
+
+			return new String(bytes, StandardCharsets.UTF_8);
+		}
+	}
+}
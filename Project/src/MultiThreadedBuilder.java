@@ -1,42 +1,206 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
 
 /**
  * thread safe builder class 
  */
 public class MultiThreadedBuilder extends InvertedIndexBuilder {
 	
+	/**
+	 * files at least this many bytes are split in to chunks that are 
+	 * parsed by different workers 
+	 */
+	public static final long SPLIT_THRESHOLD = 1L << 27;
+	
+	/**
+	 * bytes in each chunk of a split file, before moving the end of 
+	 * the chunk to the next line break 
+	 */
+	public static final int CHUNK = 1 << 25;
+	
 	/**
 	 * Worker que object 
 	 */
 	private final WorkQueue que;
 	
 	/**
-	 * index object used for the this class 
+	 * thread safe index object used for the this class 
+	 */
+	private final InvertedIndex index;
+	
+	/**
+	 * whether files are merged in a reduction tree instead of added 
+	 * to the shared index one at a time 
+	 */
+	private final boolean reduce;
+	
+	/**
+	 * merged snapshots waiting for a partner, keyed by how many 
+	 * merges deep they are 
+	 */
+	private final TreeMap<Integer, FrozenInvertedIndex> waiting;
+	
+	/**
+	 * final merge of the reduction tree, kept frozen instead of added 
+	 * to the shared index 
 	 */
-	private final ThreadSafeInvertedIndex index;
+	private FrozenInvertedIndex reduced;
 	
 	/**
 	 * Constructor class for the builder 
 	 * 
 	 * @param work			worker object to sync with class 
-	 * @param index			index used locally by builder class. 
+	 * @param index			thread safe index used locally by builder class. 
 	 */
-	public MultiThreadedBuilder(WorkQueue work, ThreadSafeInvertedIndex index)
+	public MultiThreadedBuilder(WorkQueue work, InvertedIndex index)
+	{
+		this(work, index, false);
+	}
+	
+	/**
+	 * Constructor class for the builder that can merge the files 
+	 * in a reduction tree. Each file is indexed on its own and the 
+	 * workers merge the results pairwise. The final merge is already 
+	 * frozen, so it is kept for {@link #freeze()} instead of being 
+	 * added back to the shared index. 
+	 * 
+	 * @param work			worker object to sync with class 
+	 * @param index			thread safe index used locally by builder class. 
+	 * @param reduce		whether to merge the files in a reduction tree
+	 */
+	public MultiThreadedBuilder(WorkQueue work, InvertedIndex index, boolean reduce)
 	{
 		super(index);
 		this.que = work;
 		this.index = index;
+		this.reduce = reduce;
+		this.waiting = new TreeMap<>();
 	}
 	
 	/**
-	 * executes a new task and passes it a path
+	 * executes a new task and passes it a path, or a task for every 
+	 * chunk of the path if it is a large file 
 	 * 
 	 * @param path			path to add 
 	 */
 	public void addFile(Path path) {
+		try
+		{
+			if (Files.size(path) >= SPLIT_THRESHOLD)
+			{
+				split(path);
+				return;
+			}
+		}
+		catch (IOException e)
+		{
+			// the task reports a file that cannot be read 
+		}
 		que.execute(new Task(path));
 	}
 	
+	/**
+	 * Splits a large file in to chunks that end at line breaks and 
+	 * executes a task for every chunk. Each chunk numbers its words 
+	 * from one, and the chunks are joined in order by moving their 
+	 * positions up by the number of words before them. 
+	 * 
+	 * @param path			path to split 
+	 * @throws IOException 
+	 */
+	private void split(Path path) throws IOException
+	{
+		ArrayList<Long> starts = new ArrayList<>();
+		
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ))
+		{
+			long size = channel.size();
+			long start = 0;
+			ByteBuffer buffer = ByteBuffer.allocate(1 << 16);
+			
+			while (start < size)
+			{
+				starts.add(start);
+				start = nextLine(channel, start + CHUNK, size, buffer);
+			}
+			starts.add(size);
+		}
+		
+		SplitFile file = new SplitFile(path, starts.size() - 1);
+		
+		for (int i = 0; i + 1 < starts.size(); i++)
+		{
+			que.execute(new Chunk(file, i, starts.get(i), starts.get(i + 1)));
+		}
+	}
+	
+	/**
+	 * Finds the start of the first line after an offset 
+	 * 
+	 * @param channel		file to search 
+	 * @param offset		offset to search from 
+	 * @param size			size of the file 
+	 * @param buffer		buffer to read in to 
+	 * @return long			offset after the next line break or the size 
+	 * 						of the file if there is none 
+	 * @throws IOException 
+	 */
+	private static long nextLine(FileChannel channel, long offset, long size, ByteBuffer buffer) throws IOException
+	{
+		while (offset < size)
+		{
+			buffer.clear();
+			int read = channel.read(buffer, offset);
+			
+			if (read < 0)
+			{
+				break;
+			}
+			
+			for (int i = 0; i < read; i++)
+			{
+				byte b = buffer.get(i);
+				
+				if (b == '\n' || b == '\r')
+				{
+					return offset + i + 1;
+				}
+			}
+			offset += read;
+		}
+		
+		return size;
+	}
+	
+	/**
+	 * Adds the words of a file to the index, or to the reduction tree 
+	 * 
+	 * @param location		location of the file 
+	 * @param words			positions of each stem 
+	 * @param count			number of words in the file 
+	 */
+	private void publish(String location, Map<String, PositionList> words, int count)
+	{
+		if (reduce)
+		{
+			InvertedIndex local = new InvertedIndex();
+			local.addDocument(location, words, count);
+			reduce(local.freeze(), 0);
+		}
+		else
+		{
+			index.addDocument(location, words, count);
+		}
+	}
+	
 	/**
 	 * Call that will send path to super build method and 
 	 * will finish the que once done. 
@@ -46,7 +210,89 @@ public class MultiThreadedBuilder extends InvertedIndexBuilder {
 	public void build(Path path) throws Exception {
 		super.build(path);
 		que.finish();
+		
+		if (reduce)
+		{
+			publish();
+		}
 	}	
+	
+	/**
+	 * Merges a snapshot with any waiting snapshot of the same depth, 
+	 * repeating with the result until it has no partner. Merges of 
+	 * different pairs run at the same time on different workers, 
+	 * and pairing by depth keeps both sides of a merge a similar size. 
+	 * 
+	 * @param snapshot		snapshot to merge
+	 * @param depth			number of merges the snapshot is made of
+	 */
+	private void reduce(FrozenInvertedIndex snapshot, int depth)
+	{
+		while (true)
+		{
+			FrozenInvertedIndex partner;
+			
+			synchronized (waiting)
+			{
+				partner = waiting.remove(depth);
+				
+				if (partner == null)
+				{
+					waiting.put(depth, snapshot);
+					return;
+				}
+			}
+			
+			snapshot = FrozenInvertedIndex.merge(partner, snapshot);
+			depth++;
+		}
+	}
+	
+	/**
+	 * Merges the snapshots left without a partner, smallest first, 
+	 * with the result of any earlier build. 
+	 */
+	private void publish()
+	{
+		FrozenInvertedIndex merged = null;
+		
+		synchronized (waiting)
+		{
+			for (Map.Entry<Integer, FrozenInvertedIndex> entry : waiting.entrySet())
+			{
+				merged = (merged == null) ? entry.getValue() : FrozenInvertedIndex.merge(merged, entry.getValue());
+			}
+			waiting.clear();
+		}
+		
+		if (merged != null)
+		{
+			reduced = (reduced == null) ? merged : FrozenInvertedIndex.merge(reduced, merged);
+		}
+	}
+	
+	/**
+	 * Returns the final merge of the reduction tree without thawing and 
+	 * freezing it again, combined with anything added to the shared 
+	 * index some other way, like by the crawler. 
+	 * 
+	 * @return FrozenInvertedIndex		snapshot of the built index
+	 */
+	@Override
+	public FrozenInvertedIndex freeze()
+	{
+		if (reduced == null)
+		{
+			return super.freeze();
+		}
+		
+		if (index.getCount().isEmpty())
+		{
+			return index.limited(reduced);
+		}
+		
+		return index.limited(FrozenInvertedIndex.merge(index.freeze(), reduced));
+	}
 
 	/**
 	 *
@@ -72,16 +318,24 @@ public class MultiThreadedBuilder extends InvertedIndexBuilder {
 		
 		/**
 		 * Method that will run our worker will run which 
-		 * creates a local index and adds it to our main. 
+		 * adds the whole file to our main index at once, or 
+		 * to the reduction tree. 
 		 */
 		@Override 
 		public void run()
 		{
 			try
 			{
-				InvertedIndex local = new InvertedIndex();
-				addFile(path, local);
-				index.addAll(local);
+				if (reduce)
+				{
+					InvertedIndex local = new InvertedIndex();
+					addFile(path, local);
+					reduce(local.freeze(), 0);
+				}
+				else
+				{
+					addFile(path, index);
+				}
 			}
 			catch (Exception e)
 			{
@@ -90,5 +344,202 @@ public class MultiThreadedBuilder extends InvertedIndexBuilder {
 		}
 		
 	}
+	
+	/**
+	 * 
+	 * large file being parsed in chunks, which joins the chunks in 
+	 * order as they finish and adds the file once every chunk is joined 
+	 * 
+	 */
+	private class SplitFile {
+		
+		/**
+		 * path of the file 
+		 */
+		private final Path path;
+		
+		/**
+		 * positions of the chunks that finished before the chunks 
+		 * ahead of them 
+		 */
+		private final ArrayList<Map<String, PositionList>> parts;
+		
+		/**
+		 * number of words of the chunks waiting in parts 
+		 */
+		private final int[] counts;
+		
+		/**
+		 * positions of the chunks joined so far 
+		 */
+		private Map<String, PositionList> words;
+		
+		/**
+		 * number of chunks joined so far 
+		 */
+		private int joined;
+		
+		/**
+		 * number of words of the chunks joined so far 
+		 */
+		private int count;
+		
+		/**
+		 * whether a chunk could not be read 
+		 */
+		private boolean failed;
+		
+		/**
+		 * Constructor for a file split in to chunks 
+		 * 
+		 * @param path		path of the file 
+		 * @param chunks	number of chunks 
+		 */
+		public SplitFile(Path path, int chunks)
+		{
+			this.path = path;
+			this.parts = new ArrayList<>();
+			this.counts = new int[chunks];
+			this.words = null;
+			this.joined = 0;
+			this.count = 0;
+			this.failed = false;
+			
+			for (int i = 0; i < chunks; i++)
+			{
+				parts.add(null);
+			}
+		}
+		
+		/**
+		 * Joins a finished chunk and every finished chunk after it, and 
+		 * adds the file once the last chunk is joined 
+		 * 
+		 * @param chunk		index of the chunk 
+		 * @param part		positions of each stem in the chunk 
+		 * @param words		number of words in the chunk 
+		 */
+		public synchronized void finish(int chunk, Map<String, PositionList> part, int words)
+		{
+			if (failed)
+			{
+				return;
+			}
+			
+			parts.set(chunk, part);
+			counts[chunk] = words;
+			
+			while (joined < parts.size() && parts.get(joined) != null)
+			{
+				join(parts.set(joined, null), counts[joined]);
+				joined++;
+			}
+			
+			if (joined == parts.size())
+			{
+				publish(path.toString(), this.words, count);
+				this.words = null;
+			}
+		}
+		
+		/**
+		 * Moves the positions of a chunk after the words joined so far 
+		 * 
+		 * @param part		positions of each stem in the chunk 
+		 * @param words		number of words in the chunk 
+		 */
+		private void join(Map<String, PositionList> part, int words)
+		{
+			if (this.words == null)
+			{
+				this.words = part;
+			}
+			else
+			{
+				for (Map.Entry<String, PositionList> entry : part.entrySet())
+				{
+					this.words.computeIfAbsent(entry.getKey(), stem -> new PositionList()).addAll(entry.getValue(), count);
+				}
+			}
+			count += words;
+		}
+		
+		/**
+		 * Drops the file when a chunk cannot be read, like a file that 
+		 * is not split 
+		 */
+		public synchronized void fail()
+		{
+			if (!failed)
+			{
+				failed = true;
+				words = null;
+				parts.clear();
+				System.out.println("Unable to add " + path + " to index.");
+			}
+		}
+	}
+	
+	/**
+	 * 
+	 * task that parses one chunk of a large file 
+	 * 
+	 */
+	private class Chunk implements Runnable {
+		
+		/**
+		 * file the chunk is part of 
+		 */
+		private final SplitFile file;
+		
+		/**
+		 * index of the chunk in the file 
+		 */
+		private final int chunk;
+		
+		/**
+		 * offset of the first byte 
+		 */
+		private final long start;
+		
+		/**
+		 * offset after the last byte 
+		 */
+		private final long end;
+		
+		/**
+		 * Constructor for a chunk task 
+		 * 
+		 * @param file		file the chunk is part of 
+		 * @param chunk		index of the chunk 
+		 * @param start		offset of the first byte 
+		 * @param end		offset after the last byte 
+		 */
+		public Chunk(SplitFile file, int chunk, long start, long end)
+		{
+			this.file = file;
+			this.chunk = chunk;
+			this.start = start;
+			this.end = end;
+		}
+		
+		/**
+		 * Parses the chunk and hands its positions to the file 
+		 */
+		@Override 
+		public void run()
+		{
+			try (FileChannel channel = FileChannel.open(file.path, StandardOpenOption.READ))
+			{
+				HashMap<String, PositionList> words = new HashMap<>();
+				int count = addWords(channel, start, end, words);
+				file.finish(chunk, words, count);
+			}
+			catch (Exception e)
+			{
+				file.fail();
+			}
+		}
+	}
 
 }
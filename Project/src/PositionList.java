@@ -0,0 +1,488 @@
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Compact sorted set of word positions for a single word and location.
+ * Positions are stored as the deltas between neighbours encoded as
+ * variable-byte integers, 7 bits per byte with the high bit marking that
+ * another byte follows. Most deltas fit in a single byte, compared to the
+ * boxed {@link Integer} and tree node a {@link java.util.TreeSet} needs
+ * for every position.
+ *
+ * Positions are expected to arrive in increasing order, which appends to
+ * the end of the list. Adding a smaller position still works but has to
+ * decode and re-encode the whole list.
+ *
+ * Warning: This class is not thread-safe.
+ *
+ * @author hayde
+ */
+public class PositionList extends AbstractSet<Integer>
+{
+	/**
+	 * initial capacity of the encoded bytes
+	 */
+	private static final int INITIAL = 4;
+
+	/**
+	 * variable byte encoded deltas of our positions
+	 */
+	private byte[] bytes;
+
+	/**
+	 * number of bytes of the array in use
+	 */
+	private int length;
+
+	/**
+	 * number of positions stored
+	 */
+	private int size;
+
+	/**
+	 * last and largest position stored
+	 */
+	private int last;
+
+	/**
+	 * Constructor for an empty list
+	 */
+	public PositionList()
+	{
+		this.bytes = new byte[INITIAL];
+		this.length = 0;
+		this.size = 0;
+		this.last = 0;
+	}
+
+	/**
+	 * Constructor for a list with the given sorted positions
+	 *
+	 * @param positions		positions in increasing order
+	 */
+	public PositionList(int[] positions)
+	{
+		this();
+
+		for (int position : positions)
+		{
+			add(position);
+		}
+	}
+
+	/**
+	 * Constructor for a copy of another list
+	 *
+	 * @param other			list to copy
+	 */
+	public PositionList(PositionList other)
+	{
+		this.bytes = Arrays.copyOf(other.bytes, Math.max(other.length, INITIAL));
+		this.length = other.length;
+		this.size = other.size;
+		this.last = other.last;
+	}
+
+	/**
+	 * Adds a position to the list
+	 *
+	 * @param position		position to add
+	 * @return true if the position was not already in the list
+	 */
+	public boolean add(int position)
+	{
+		if (size == 0 || position > last)
+		{
+			append(size == 0 ? position : position - last);
+			last = position;
+			size++;
+			return true;
+		}
+
+		int[] positions = toArray(this);
+		int found = Arrays.binarySearch(positions, position);
+
+		if (found >= 0)
+		{
+			return false;
+		}
+
+		int insert = -(found + 1);
+		int[] merged = new int[positions.length + 1];
+		System.arraycopy(positions, 0, merged, 0, insert);
+		merged[insert] = position;
+		System.arraycopy(positions, insert, merged, insert + 1, positions.length - insert);
+		encode(merged, merged.length);
+		return true;
+	}
+
+	@Override
+	public boolean add(Integer position)
+	{
+		return add(position.intValue());
+	}
+
+	/**
+	 * Adds every position of the collection, merging sorted lists
+	 * instead of inserting one position at a time
+	 */
+	@Override
+	public boolean addAll(Collection<? extends Integer> other)
+	{
+		if (!(other instanceof PositionList))
+		{
+			return super.addAll(other);
+		}
+
+		PositionList list = (PositionList) other;
+
+		if (list.size == 0)
+		{
+			return false;
+		}
+
+		if (size == 0 || list.first() > last)
+		{
+			Positions iter = list.new Positions();
+
+			while (iter.hasNext())
+			{
+				add(iter.nextInt());
+			}
+			return true;
+		}
+
+		int[] ours = toArray(this);
+		int[] theirs = toArray(list);
+		int[] merged = new int[ours.length + theirs.length];
+		int i = 0, j = 0, k = 0;
+
+		while (i < ours.length || j < theirs.length)
+		{
+			if (j == theirs.length || (i < ours.length && ours[i] < theirs[j]))
+			{
+				merged[k++] = ours[i++];
+			}
+			else if (i == ours.length || theirs[j] < ours[i])
+			{
+				merged[k++] = theirs[j++];
+			}
+			else
+			{
+				merged[k++] = ours[i++];
+				j++;
+			}
+		}
+
+		boolean changed = k != size;
+		encode(merged, k);
+		return changed;
+	}
+
+	/**
+	 * Adds every position of another list moved up by an offset, used to
+	 * join the positions of consecutive parts of a file. Only the first
+	 * delta of the other list changes, so the rest of its bytes are copied
+	 * without decoding them.
+	 *
+	 * @param other			list to add
+	 * @param offset		amount added to each position of the other list
+	 * @throws IllegalArgumentException if a moved position is not larger
+	 * 			than every position of this list
+	 */
+	public void addAll(PositionList other, int offset)
+	{
+		if (other.size == 0)
+		{
+			return;
+		}
+
+		int first = other.first() + offset;
+
+		if (size > 0 && first <= last)
+		{
+			throw new IllegalArgumentException("Position " + first + " is not after " + last);
+		}
+
+		// bytes of the first delta end at the first byte without the high bit
+		int skip = 0;
+
+		while ((other.bytes[skip++] & 0x80) != 0)
+		{
+			// skip the continuation bytes
+		}
+
+		append(size == 0 ? first : first - last);
+
+		int rest = other.length - skip;
+
+		if (length + rest > bytes.length)
+		{
+			bytes = Arrays.copyOf(bytes, Math.max(bytes.length + (bytes.length >> 1), length + rest));
+		}
+
+		System.arraycopy(other.bytes, skip, bytes, length, rest);
+		length += rest;
+		size += other.size;
+		last = other.last + offset;
+	}
+
+	@Override
+	public boolean contains(Object o)
+	{
+		if (!(o instanceof Integer) || size == 0)
+		{
+			return false;
+		}
+
+		int position = (Integer) o;
+
+		if (position > last)
+		{
+			return false;
+		}
+
+		Positions iter = new Positions();
+
+		while (iter.hasNext())
+		{
+			int next = iter.nextInt();
+
+			if (next >= position)
+			{
+				return next == position;
+			}
+		}
+
+		return false;
+	}
+
+	@Override
+	public int size()
+	{
+		return size;
+	}
+
+	/**
+	 * Returns the smallest position in the list
+	 *
+	 * @return first position
+	 */
+	public int first()
+	{
+		if (size == 0)
+		{
+			throw new NoSuchElementException();
+		}
+		return new Positions().nextInt();
+	}
+
+	/**
+	 * Returns the largest position in the list
+	 *
+	 * @return last position
+	 */
+	public int last()
+	{
+		if (size == 0)
+		{
+			throw new NoSuchElementException();
+		}
+		return last;
+	}
+
+	/**
+	 * Returns the number of bytes used by the encoded positions
+	 *
+	 * @return encoded length
+	 */
+	public int encodedLength()
+	{
+		return length;
+	}
+
+	/**
+	 * Shrinks the encoded bytes to the exact length in use, useful
+	 * once a list will not be added to anymore.
+	 */
+	public void trimToSize()
+	{
+		if (bytes.length != length)
+		{
+			bytes = Arrays.copyOf(bytes, length);
+		}
+	}
+
+	@Override
+	public Iterator<Integer> iterator()
+	{
+		return new Positions();
+	}
+
+	/**
+	 * Decodes all of the positions of a list in to an array
+	 *
+	 * @param list			list to decode
+	 * @return int[]		positions in increasing order
+	 */
+	public static int[] toArray(PositionList list)
+	{
+		int[] positions = new int[list.size];
+		Positions iter = list.new Positions();
+
+		for (int i = 0; i < positions.length; i++)
+		{
+			positions[i] = iter.nextInt();
+		}
+
+		return positions;
+	}
+
+	/**
+	 * Copies the encoded positions in to the destination array
+	 *
+	 * @param dest			array to copy in to
+	 * @param offset		offset of the destination to start at
+	 * @return int			number of bytes copied
+	 */
+	public int copyTo(byte[] dest, int offset)
+	{
+		System.arraycopy(bytes, 0, dest, offset, length);
+		return length;
+	}
+
+	/**
+	 * Decodes positions that were encoded by a list and copied
+	 * somewhere else, for example by {@link #copyTo(byte[], int)}
+	 *
+	 * @param bytes			encoded positions
+	 * @param offset		offset of the first encoded position
+	 * @param count			number of positions to decode
+	 * @return int[]		positions in increasing order
+	 */
+	public static int[] decode(byte[] bytes, int offset, int count)
+	{
+		int[] positions = new int[count];
+		int previous = 0;
+
+		for (int i = 0; i < count; i++)
+		{
+			int value = 0;
+			int shift = 0;
+			byte b;
+
+			do
+			{
+				b = bytes[offset++];
+				value |= (b & 0x7F) << shift;
+				shift += 7;
+			}
+			while (b < 0);
+
+			previous += value;
+			positions[i] = previous;
+		}
+
+		return positions;
+	}
+
+	/**
+	 * Re-encodes the list from scratch using sorted positions
+	 *
+	 * @param positions		positions in increasing order
+	 * @param count			number of positions of the array to use
+	 */
+	private void encode(int[] positions, int count)
+	{
+		length = 0;
+		size = 0;
+
+		for (int i = 0; i < count; i++)
+		{
+			append(i == 0 ? positions[i] : positions[i] - positions[i - 1]);
+			size++;
+		}
+
+		last = count == 0 ? 0 : positions[count - 1];
+	}
+
+	/**
+	 * Appends a variable byte encoded value to the end of our bytes
+	 *
+	 * @param value			value to append
+	 */
+	private void append(int value)
+	{
+		if (length + 5 > bytes.length)
+		{
+			bytes = Arrays.copyOf(bytes, Math.max(bytes.length + (bytes.length >> 1), length + 5));
+		}
+
+		while ((value & ~0x7F) != 0)
+		{
+			bytes[length++] = (byte) ((value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+
+		bytes[length++] = (byte) value;
+	}
+
+	/**
+	 * Iterator that decodes the positions one at a time
+	 */
+	private class Positions implements Iterator<Integer>
+	{
+		/**
+		 * offset of the next byte to decode
+		 */
+		private int offset = 0;
+
+		/**
+		 * previously decoded position
+		 */
+		private int previous = 0;
+
+		@Override
+		public boolean hasNext()
+		{
+			return offset < length;
+		}
+
+		@Override
+		public Integer next()
+		{
+			return nextInt();
+		}
+
+		/**
+		 * Decodes the next position without boxing it
+		 *
+		 * @return position		next position in the list
+		 */
+		public int nextInt()
+		{
+			if (offset >= length)
+			{
+				throw new NoSuchElementException();
+			}
+
+			int value = 0;
+			int shift = 0;
+			byte b;
+
+			do
+			{
+				b = bytes[offset++];
+				value |= (b & 0x7F) << shift;
+				shift += 7;
+			}
+			while (b < 0);
+
+			previous += value;
+			return previous;
+		}
+	}
+}
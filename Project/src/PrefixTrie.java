@@ -0,0 +1,269 @@
+import java.util.Arrays;
+
+/**
+ * Compact trie over the first few characters of a sorted array of words,
+ * used to find the range of words that start with a prefix. Every node
+ * stores the range of words below it, so the words matching a short prefix
+ * are found by following one node per character instead of comparing
+ * every word of the range.
+ *
+ * The nodes are stored breadth first in parallel arrays, with the children
+ * of a node next to each other and sorted by their character. Prefixes
+ * longer than the depth of the trie follow it as far as it goes and
+ * binary search the remaining range.
+ *
+ * @author hayde
+ */
+public class PrefixTrie
+{
+	/**
+	 * default number of characters the trie indexes
+	 */
+	public static final int DEPTH = 4;
+
+	/**
+	 * the sorted words
+	 */
+	private final String[] words;
+
+	/**
+	 * number of characters the trie indexes
+	 */
+	private final int depth;
+
+	/**
+	 * number of nodes in use
+	 */
+	private int size;
+
+	/**
+	 * character leading to each node
+	 */
+	private char[] labels;
+
+	/**
+	 * first word below each node
+	 */
+	private int[] low;
+
+	/**
+	 * one past the last word below each node
+	 */
+	private int[] high;
+
+	/**
+	 * first child of each node
+	 */
+	private int[] firstChild;
+
+	/**
+	 * one past the last child of each node
+	 */
+	private int[] lastChild;
+
+	/**
+	 * Builds a trie of the default depth.
+	 *
+	 * @param words			words in sorted order
+	 */
+	public PrefixTrie(String[] words)
+	{
+		this(words, DEPTH);
+	}
+
+	/**
+	 * Builds a trie over the first characters of the words.
+	 *
+	 * @param words			words in sorted order
+	 * @param depth			number of characters to index
+	 */
+	public PrefixTrie(String[] words, int depth)
+	{
+		this.words = words;
+		this.depth = Math.max(depth, 0);
+
+		int capacity = Math.max(words.length, 16);
+		this.labels = new char[capacity];
+		this.low = new int[capacity];
+		this.high = new int[capacity];
+		this.firstChild = new int[capacity];
+		this.lastChild = new int[capacity];
+
+		addNode('\0', 0, words.length);
+		int levelEnd = 1;
+		int level = 0;
+
+		for (int node = 0; node < size; node++)
+		{
+			if (node == levelEnd)
+			{
+				level++;
+				levelEnd = size;
+			}
+
+			firstChild[node] = size;
+
+			if (level < this.depth)
+			{
+				addChildren(node, level);
+			}
+
+			lastChild[node] = size;
+		}
+
+		labels = Arrays.copyOf(labels, size);
+		low = Arrays.copyOf(low, size);
+		high = Arrays.copyOf(high, size);
+		firstChild = Arrays.copyOf(firstChild, size);
+		lastChild = Arrays.copyOf(lastChild, size);
+	}
+
+	/**
+	 * Adds a child for each character that follows the prefix of a node
+	 *
+	 * @param node			node to add the children of
+	 * @param level			length of the prefix of the node
+	 */
+	private void addChildren(int node, int level)
+	{
+		int i = low[node];
+
+		// the word equal to the prefix sorts first and has no next character
+		if (i < high[node] && words[i].length() == level)
+		{
+			i++;
+		}
+
+		while (i < high[node])
+		{
+			char c = words[i].charAt(level);
+			int j = i + 1;
+
+			while (j < high[node] && words[j].charAt(level) == c)
+			{
+				j++;
+			}
+
+			addNode(c, i, j);
+			i = j;
+		}
+	}
+
+	/**
+	 * Appends a node, growing the arrays if needed
+	 *
+	 * @param label			character leading to the node
+	 * @param from			first word below the node
+	 * @param to			one past the last word below the node
+	 */
+	private void addNode(char label, int from, int to)
+	{
+		if (size == labels.length)
+		{
+			int capacity = size * 2;
+			labels = Arrays.copyOf(labels, capacity);
+			low = Arrays.copyOf(low, capacity);
+			high = Arrays.copyOf(high, capacity);
+			firstChild = Arrays.copyOf(firstChild, capacity);
+			lastChild = Arrays.copyOf(lastChild, capacity);
+		}
+
+		labels[size] = label;
+		low[size] = from;
+		high[size] = to;
+		size++;
+	}
+
+	/**
+	 * Returns the child of a node reached by a character or -1
+	 *
+	 * @param node			node to look in
+	 * @param c				character to follow
+	 * @return int			the child or -1
+	 */
+	private int child(int node, char c)
+	{
+		int from = firstChild[node];
+		int to = lastChild[node] - 1;
+
+		while (from <= to)
+		{
+			int middle = (from + to) >>> 1;
+
+			if (labels[middle] < c)
+			{
+				from = middle + 1;
+			}
+			else if (labels[middle] > c)
+			{
+				to = middle - 1;
+			}
+			else
+			{
+				return middle;
+			}
+		}
+
+		return -1;
+	}
+
+	/**
+	 * Returns the range of words that start with a prefix
+	 *
+	 * @param prefix		prefix to look for
+	 * @return int[]		first word and one past the last word of the range
+	 */
+	public int[] range(String prefix)
+	{
+		int node = 0;
+		int followed = Math.min(prefix.length(), depth);
+
+		for (int i = 0; i < followed; i++)
+		{
+			node = child(node, prefix.charAt(i));
+
+			if (node < 0)
+			{
+				return new int[] { 0, 0 };
+			}
+		}
+
+		if (prefix.length() == followed)
+		{
+			return new int[] { low[node], high[node] };
+		}
+
+		int start = Arrays.binarySearch(words, low[node], high[node], prefix);
+		start = start < 0 ? -(start + 1) : start;
+
+		// the words starting with the prefix are the front of what is left
+		int from = start;
+		int to = high[node];
+
+		while (from < to)
+		{
+			int middle = (from + to) >>> 1;
+
+			if (words[middle].startsWith(prefix))
+			{
+				from = middle + 1;
+			}
+			else
+			{
+				to = middle;
+			}
+		}
+
+		return new int[] { start, from };
+	}
+
+	/**
+	 * Returns the number of nodes of the trie
+	 *
+	 * @return int			number of nodes
+	 */
+	public int size()
+	{
+		return size;
+	}
+}
@@ -0,0 +1,251 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.regex.Pattern;
+
+import opennlp.tools.stemmer.Stemmer;
+
+/**
+ * A query for words that appear close together at a location, using the
+ * positions stored by the index. There are two forms:
+ *
+ * A quoted phrase, like {@code "quick brown fox"}, matches the words in
+ * that order at consecutive positions.
+ *
+ * Words joined by NEAR/k, like {@code apple NEAR/3 banana}, match when
+ * each word is at most k positions from the word before it, in either
+ * order. Every word of a NEAR query has to be a single word.
+ *
+ * The count of a match is the number of positions the first word starts
+ * a match at, so the results are scored like the results of a regular
+ * search, including with BM25 when the index ranks with it. Exact and partial searches do not apply, the words are always
+ * matched exactly.
+ *
+ * @author hayde
+ */
+public class ProximityQuery
+{
+	/**
+	 * Regular expression that matches the NEAR/k operator
+	 */
+	public static final Pattern NEAR = Pattern.compile("NEAR/(\\d+)");
+
+	/**
+	 * stems of the query in order
+	 */
+	private final String[] words;
+
+	/**
+	 * most positions between each word and the word after it
+	 */
+	private final int[] distances;
+
+	/**
+	 * whether the words have to be in order
+	 */
+	private final boolean ordered;
+
+	/**
+	 * Initializes a query
+	 *
+	 * @param words			stems of the query in order
+	 * @param distances		most positions between each word and the next
+	 * @param ordered		whether the words have to be in order
+	 */
+	private ProximityQuery(String[] words, int[] distances, boolean ordered)
+	{
+		this.words = words;
+		this.distances = distances;
+		this.ordered = ordered;
+	}
+
+	/**
+	 * Parses a line as a proximity query using the shared stem cache
+	 *
+	 * @param line				line to parse
+	 * @return ProximityQuery	the query or null if the line is a regular query
+	 *
+	 * @see #parse(String, Stemmer)
+	 */
+	public static ProximityQuery parse(String line)
+	{
+		String trimmed = line.strip();
+
+		// most lines are regular queries, which do not need a stemmer here
+		if (!trimmed.startsWith("\"") && !NEAR.matcher(trimmed).find())
+		{
+			return null;
+		}
+
+		return parse(trimmed, StemCache.SHARED);
+	}
+
+	/**
+	 * Parses a line as a proximity query. Lines that are not a quoted
+	 * phrase and have no NEAR/k between single words return null, so
+	 * they can be searched as a regular query.
+	 *
+	 * @param line				line to parse
+	 * @param stemmer			stemmer for the words
+	 * @return ProximityQuery	the query or null if the line is a regular query
+	 */
+	public static ProximityQuery parse(String line, Stemmer stemmer)
+	{
+		String trimmed = line.strip();
+
+		if (trimmed.length() > 1 && trimmed.startsWith("\"") && trimmed.endsWith("\""))
+		{
+			String[] words = stems(trimmed.substring(1, trimmed.length() - 1), stemmer);
+
+			if (words.length == 0)
+			{
+				return null;
+			}
+
+			int[] distances = new int[words.length - 1];
+			Arrays.fill(distances, 1);
+			return new ProximityQuery(words, distances, true);
+		}
+
+		String[] tokens = TextParser.split(trimmed);
+
+		// operands and operators have to alternate, starting with an operand
+		if (tokens.length < 3 || tokens.length % 2 == 0)
+		{
+			return null;
+		}
+
+		String[] words = new String[tokens.length / 2 + 1];
+		int[] distances = new int[tokens.length / 2];
+
+		for (int i = 0; i < tokens.length; i++)
+		{
+			if (i % 2 == 0)
+			{
+				String[] word = stems(tokens[i], stemmer);
+
+				if (word.length != 1)
+				{
+					return null;
+				}
+
+				words[i / 2] = word[0];
+			}
+			else
+			{
+				if (!NEAR.matcher(tokens[i]).matches())
+				{
+					return null;
+				}
+
+				try
+				{
+					distances[i / 2] = Math.max(Integer.parseInt(tokens[i].substring(5)), 1);
+				}
+				catch (NumberFormatException e)
+				{
+					distances[i / 2] = Integer.MAX_VALUE;
+				}
+			}
+		}
+
+		return new ProximityQuery(words, distances, false);
+	}
+
+	/**
+	 * Cleans and stems the words of some text, keeping their order
+	 *
+	 * @param text			text to stem
+	 * @param stemmer		stemmer for the words
+	 * @return String[]		stems in order
+	 */
+	private static String[] stems(String text, Stemmer stemmer)
+	{
+		String[] words = TextParser.parse(text);
+
+		for (int i = 0; i < words.length; i++)
+		{
+			words[i] = stemmer.stem(words[i]).toString();
+		}
+
+		return words;
+	}
+
+	/**
+	 * Returns the number of words of the query
+	 *
+	 * @return int			number of words
+	 */
+	public int size()
+	{
+		return words.length;
+	}
+
+	/**
+	 * Returns a word of the query
+	 *
+	 * @param i				index of the word
+	 * @return String		stem of the word
+	 */
+	public String getWord(int i)
+	{
+		return words[i];
+	}
+
+	/**
+	 * Returns the stems of the query in order
+	 *
+	 * @return List			stems of the query
+	 */
+	public List<String> getWords()
+	{
+		return List.of(words);
+	}
+
+	/**
+	 * Returns the most positions between a word and the word after it
+	 *
+	 * @param i				index of the word
+	 * @return int			most positions to the next word
+	 */
+	public int getDistance(int i)
+	{
+		return distances[i];
+	}
+
+	/**
+	 * Returns whether the words have to be in order
+	 *
+	 * @return boolean		whether the words have to be in order
+	 */
+	public boolean isOrdered()
+	{
+		return ordered;
+	}
+
+	/**
+	 * Returns the query written with its stems, used as the key of its
+	 * results
+	 *
+	 * @return String		the query
+	 */
+	@Override
+	public String toString()
+	{
+		if (ordered)
+		{
+			return "\"" + String.join(" ", words) + "\"";
+		}
+
+		ArrayList<String> tokens = new ArrayList<>();
+		tokens.add(words[0]);
+
+		for (int i = 0; i < distances.length; i++)
+		{
+			tokens.add("NEAR/" + distances[i]);
+			tokens.add(words[i + 1]);
+		}
+
+		return String.join(" ", tokens);
+	}
+}
@@ -3,6 +3,7 @@ import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.Set;
+import java.util.regex.Pattern;
 
 /**
  * Interface that will be implemented by 
@@ -20,13 +21,45 @@ public interface QueryInterface {
 	 */
 	public void writeQueryJson(Path path) throws Exception;
 
+	/**
+	 * Regular expression that matches AND between the words of a line, 
+	 * which makes every word of the line required 
+	 */
+	public static final Pattern AND = Pattern.compile("(?<=\\S)\\s+AND\\s+(?=\\S)");
+
 	/**
 	 * method to parseLine
 	 * 
 	 * @param line				line to parse
 	 * @param exact				exact boolean
 	 */
-	public void parseLine(String line, boolean exact);
+	public default void parseLine(String line, boolean exact) {
+		parseLine(line, exact, false);
+	}
+
+	/**
+	 * method to parseLine, only returning locations that match every 
+	 * word when all is set or the line joins its words with AND 
+	 * 
+	 * @param line				line to parse
+	 * @param exact				exact boolean
+	 * @param all				whether every word has to match
+	 */
+	public void parseLine(String line, boolean exact, boolean all);
+
+	/**
+	 * method to query a whole file in batches, searching the lines that 
+	 * match any of their words together so each posting list is read 
+	 * once per batch instead of once per query. The results are the same 
+	 * as {@link #query(Path, boolean, boolean)}. 
+	 * 
+	 * @param path				path to query
+	 * @param exact				exact boolean
+	 * @param all				whether every word of a line has to match
+	 * @throws Exception
+	 * @see InvertedIndex#batchSearch(java.util.List, boolean)
+	 */
+	public void batchQuery(Path path, boolean exact, boolean all) throws Exception;
 
 	/**
 	 * Method that returns Results keys
@@ -42,13 +75,26 @@ public interface QueryInterface {
 	 * @throws Exception
 	 */
 	public default void query(Path path, boolean exact) throws Exception {
+		query(path, exact, false);
+	}
+
+	/**
+	 * default method to query, where all makes every line a 
+	 * conjunctive query 
+	 * 
+	 * @param path				path to query
+	 * @param exact				exact boolean
+	 * @param all				whether every word of a line has to match
+	 * @throws Exception
+	 */
+	public default void query(Path path, boolean exact, boolean all) throws Exception {
 		try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8))
 		{
 			String raw;
 
 			while ((raw = reader.readLine()) != null)
 			{
-				parseLine(raw, exact);
+				parseLine(raw, exact, all);
 			}
 		}
 }
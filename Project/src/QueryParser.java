@@ -1,6 +1,11 @@
+import java.io.BufferedReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Set;
 import java.util.TreeMap;
 import java.util.TreeSet;
@@ -45,22 +50,80 @@ public class QueryParser implements QueryInterface{
 
 	/**
 	 * Called by query function to stem lines and inject the code in to 
-	 * the results 
+	 * the results. Quoted phrases and NEAR queries are searched with 
+	 * {@link InvertedIndex#proximitySearch(ProximityQuery)} instead. 
 	 * 
 	 * @param line 			line to be paresed
 	 * @param exact			whether we are doing exact or not
+	 * @param all			whether every word has to match
 	 */
-	public void parseLine(String line, boolean exact)
+	@Override
+	public void parseLine(String line, boolean exact, boolean all)
 	{
-			TreeSet<String> stems = TextFileStemmer.stems(line);
-			String joined = String.join(" ", stems);
+			ProximityQuery proximity = ProximityQuery.parse(line);
+
+			if (proximity != null)
+			{
+				results.putIfAbsent(proximity.toString(), index.proximitySearch(proximity));
+				return;
+			}
+
+			boolean conjunctive = all || AND.matcher(line).find();
+			TreeSet<String> stems = TextFileStemmer.stems(AND.matcher(line).replaceAll(" "));
+			String joined = String.join(conjunctive ? " AND " : " ", stems);
 
 			if (!stems.isEmpty() && !results.containsKey(joined))
 			{
-				results.put(joined, index.search(stems, exact));
+				results.put(joined, conjunctive ? index.conjunctiveSearch(stems, exact) : index.search(stems, exact));
 			}
 	}
 
+	/**
+	 * Collects the lines that match any of their words and searches them 
+	 * together once the file is read, in sorted order so queries that 
+	 * start with the same words share a batch. Proximity and conjunctive 
+	 * lines are searched as they are read. 
+	 * 
+	 * @param path			path to query
+	 * @param exact			whether we are doing exact or not
+	 * @param all			whether every word has to match
+	 */
+	@Override
+	public void batchQuery(Path path, boolean exact, boolean all) throws Exception
+	{
+		TreeMap<String, TreeSet<String>> batch = new TreeMap<>();
+
+		try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8))
+		{
+			String line;
+
+			while ((line = reader.readLine()) != null)
+			{
+				if (all || AND.matcher(line).find() || ProximityQuery.parse(line) != null)
+				{
+					parseLine(line, exact, all);
+					continue;
+				}
+
+				TreeSet<String> stems = TextFileStemmer.stems(line);
+				String joined = String.join(" ", stems);
+
+				if (!stems.isEmpty() && !results.containsKey(joined))
+				{
+					batch.putIfAbsent(joined, stems);
+				}
+			}
+		}
+
+		List<ArrayList<InvertedIndex.Result>> found = index.batchSearch(new ArrayList<>(batch.values()), exact);
+		Iterator<String> keys = batch.keySet().iterator();
+
+		for (ArrayList<InvertedIndex.Result> result : found)
+		{
+			results.put(keys.next(), result);
+		}
+	}
+
 	/**
 	 * getter method to return an unmodifiable keyset of 
 	 * queryJson.
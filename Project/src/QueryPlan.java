@@ -0,0 +1,223 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Plan of a search, made by {@link InvertedIndex#plan(java.util.Collection, boolean)}.
+ * Every query term is looked up once to find the words it matches and
+ * the number of postings those words have, and the terms are ordered
+ * rarest first so a conjunctive search can intersect from the smallest
+ * list and stop as soon as nothing is left.
+ *
+ * Terms with more postings than the budget of the index are dropped, so
+ * one very common term or short prefix cannot make a long query slow. The
+ * rarest term is always kept, so a query never loses every term. Dropped
+ * terms are not searched by a search of any term, they neither match nor
+ * add to the count of a location. A search that needs every term still
+ * uses them, after the terms under the budget.
+ *
+ * @author hayde
+ */
+public class QueryPlan
+{
+	/**
+	 * order the terms are searched in, fewest postings first
+	 */
+	private static final Comparator<Step> RAREST = Comparator.comparingLong(Step::getPostings).thenComparing(Step::getQuery);
+
+	/**
+	 * terms that are searched, rarest first
+	 */
+	private final List<Step> steps;
+
+	/**
+	 * terms over the budget, rarest first
+	 */
+	private final List<Step> dropped;
+
+	/**
+	 * most postings a term can have before it is dropped
+	 */
+	private final long budget;
+
+	/**
+	 * Initializes a plan, ordering the terms and dropping the ones over
+	 * the budget
+	 *
+	 * @param terms			every term of the query
+	 * @param budget		most postings a term can have
+	 */
+	QueryPlan(List<Step> terms, long budget)
+	{
+		ArrayList<Step> sorted = new ArrayList<>(terms);
+		sorted.sort(RAREST);
+
+		ArrayList<Step> kept = new ArrayList<>();
+		ArrayList<Step> over = new ArrayList<>();
+
+		for (Step step : sorted)
+		{
+			if (kept.isEmpty() || step.getPostings() <= budget)
+			{
+				kept.add(step);
+			}
+			else
+			{
+				over.add(step);
+			}
+		}
+
+		this.steps = Collections.unmodifiableList(kept);
+		this.dropped = Collections.unmodifiableList(over);
+		this.budget = budget;
+	}
+
+	/**
+	 * Returns the terms that are searched, rarest first
+	 *
+	 * @return List			terms that are searched
+	 */
+	public List<Step> getSteps()
+	{
+		return steps;
+	}
+
+	/**
+	 * Returns the terms dropped for having more postings than the budget
+	 *
+	 * @return List			terms that are not searched
+	 */
+	public List<Step> getDropped()
+	{
+		return dropped;
+	}
+
+	/**
+	 * Returns every term, the searched ones followed by the dropped ones,
+	 * which is still rarest first
+	 *
+	 * @return List			every term of the query
+	 */
+	public List<Step> getAllSteps()
+	{
+		ArrayList<Step> all = new ArrayList<>(steps);
+		all.addAll(dropped);
+		return all;
+	}
+
+	/**
+	 * Returns the query terms that are searched, rarest first
+	 *
+	 * @return List			query terms that are searched
+	 */
+	public List<String> getQueries()
+	{
+		return steps.stream().map(Step::getQuery).collect(Collectors.toList());
+	}
+
+	/**
+	 * Returns whether some term matches no word, in which case a search
+	 * that needs every term matches nothing
+	 *
+	 * @return boolean		whether a term is missing from the index
+	 */
+	public boolean isMissing()
+	{
+		return !steps.isEmpty() && steps.get(0).getPostings() == 0;
+	}
+
+	/**
+	 * Returns the plan in a readable form, one term after another in the
+	 * order they are searched, followed by the dropped terms
+	 *
+	 * @return String		the plan
+	 */
+	@Override
+	public String toString()
+	{
+		StringBuilder builder = new StringBuilder();
+		builder.append(steps.stream().map(Step::toString).collect(Collectors.joining(" -> ")));
+
+		if (!dropped.isEmpty())
+		{
+			builder.append(" dropped over ").append(budget).append(": ");
+			builder.append(dropped.stream().map(Step::toString).collect(Collectors.joining(", ")));
+		}
+
+		return builder.toString();
+	}
+
+	/**
+	 * One query term of a plan with the words it matches
+	 */
+	public static class Step
+	{
+		/**
+		 * query term
+		 */
+		private final String query;
+
+		/**
+		 * words of the index the term matches
+		 */
+		private final List<String> words;
+
+		/**
+		 * number of postings of the words
+		 */
+		private final long postings;
+
+		/**
+		 * Initializes a step
+		 *
+		 * @param query			query term
+		 * @param words			words the term matches
+		 * @param postings		number of postings of the words
+		 */
+		Step(String query, List<String> words, long postings)
+		{
+			this.query = query;
+			this.words = words;
+			this.postings = postings;
+		}
+
+		/**
+		 * Returns the query term
+		 *
+		 * @return String		query term
+		 */
+		public String getQuery()
+		{
+			return query;
+		}
+
+		/**
+		 * Returns the words of the index the term matches
+		 *
+		 * @return List			matching words
+		 */
+		public List<String> getWords()
+		{
+			return words;
+		}
+
+		/**
+		 * Returns the number of postings of the words, the sum of their
+		 * document frequencies
+		 *
+		 * @return long			number of postings
+		 */
+		public long getPostings()
+		{
+			return postings;
+		}
+
+		@Override
+		public String toString()
+		{
+			return query + "(" + words.size() + " words, " + postings + " postings)";
+		}
+	}
+}
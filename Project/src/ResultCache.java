@@ -0,0 +1,215 @@
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Bounded cache of search results for popular queries. Entries are kept in
+ * least recently used order and the oldest entry is evicted once the cache
+ * is full. Every entry remembers the version of the index it was found at,
+ * and an entry found at an older version than the current one is searched
+ * again instead of being served.
+ *
+ * Keys are built with {@link #key(String, Iterable)} from the search mode
+ * and the sorted stems of the query, so queries that stem to the same
+ * words share an entry.
+ *
+ * @author hayde
+ */
+public class ResultCache
+{
+	/**
+	 * default number of queries kept
+	 */
+	public static final int DEFAULT = 4096;
+
+	/**
+	 * index the results are from
+	 */
+	private final InvertedIndex index;
+
+	/**
+	 * entries in least recently used order, guarded by itself
+	 */
+	private final LinkedHashMap<String, Entry> entries;
+
+	/**
+	 * number of searches answered from the cache
+	 */
+	private final LongAdder hits;
+
+	/**
+	 * number of searches that had to search the index
+	 */
+	private final LongAdder misses;
+
+	/**
+	 * Initializes a cache with the default size.
+	 *
+	 * @param index			index the results are from
+	 */
+	public ResultCache(InvertedIndex index)
+	{
+		this(index, DEFAULT);
+	}
+
+	/**
+	 * Initializes a cache.
+	 *
+	 * @param index			index the results are from
+	 * @param capacity		most queries kept
+	 */
+	public ResultCache(InvertedIndex index, int capacity)
+	{
+		this.index = index;
+		this.hits = new LongAdder();
+		this.misses = new LongAdder();
+		this.entries = new LinkedHashMap<>(16, 0.75f, true)
+		{
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest)
+			{
+				return size() > capacity;
+			}
+		};
+	}
+
+	/**
+	 * Returns the key of a query
+	 *
+	 * @param mode			search mode, like exact or partial
+	 * @param stems			stems of the query in sorted order
+	 * @return String		key of the query
+	 */
+	public static String key(String mode, Iterable<String> stems)
+	{
+		return mode + ":" + String.join(" ", stems);
+	}
+
+	/**
+	 * Returns the cached results of a query, or searches the index and
+	 * caches the results if there are none for the current version. The
+	 * version is read before searching, so results that raced a write are
+	 * searched again next time.
+	 *
+	 * @param key			key of the query
+	 * @param search		search to run when the results are not cached
+	 * @return List			unmodifiable results of the query
+	 */
+	public List<InvertedIndex.Result> get(String key, Supplier<? extends List<InvertedIndex.Result>> search)
+	{
+		long version = index.getVersion();
+		Entry entry;
+
+		synchronized (entries)
+		{
+			entry = entries.get(key);
+		}
+
+		if (entry != null && entry.version == version)
+		{
+			hits.increment();
+			return entry.results;
+		}
+
+		misses.increment();
+		List<InvertedIndex.Result> results = Collections.unmodifiableList(search.get());
+
+		synchronized (entries)
+		{
+			Entry current = entries.get(key);
+
+			if (current == null || current.version <= version)
+			{
+				entries.put(key, new Entry(version, results));
+			}
+		}
+
+		return results;
+	}
+
+	/**
+	 * Returns the number of searches answered from the cache
+	 *
+	 * @return long			number of hits
+	 */
+	public long getHits()
+	{
+		return hits.sum();
+	}
+
+	/**
+	 * Returns the number of searches that had to search the index
+	 *
+	 * @return long			number of misses
+	 */
+	public long getMisses()
+	{
+		return misses.sum();
+	}
+
+	/**
+	 * Returns the number of queries cached
+	 *
+	 * @return int			number of queries
+	 */
+	public int size()
+	{
+		synchronized (entries)
+		{
+			return entries.size();
+		}
+	}
+
+	/**
+	 * Removes every cached query
+	 */
+	public void clear()
+	{
+		synchronized (entries)
+		{
+			entries.clear();
+		}
+	}
+
+	@Override
+	public String toString()
+	{
+		long found = getHits();
+		long total = found + getMisses();
+		return String.format("%d hits, %d misses (%.1f%% hit rate), %d queries cached", found, total - found,
+				total == 0 ? 0.0 : 100.0 * found / total, size());
+	}
+
+	/**
+	 * Results of a query and the version of the index they were found at
+	 */
+	private static class Entry
+	{
+		/**
+		 * version of the index the results were found at
+		 */
+		private final long version;
+
+		/**
+		 * unmodifiable results of the query
+		 */
+		private final List<InvertedIndex.Result> results;
+
+		/**
+		 * Initializes an entry
+		 *
+		 * @param version		version of the index
+		 * @param results		unmodifiable results of the query
+		 */
+		public Entry(long version, List<InvertedIndex.Result> results)
+		{
+			this.version = version;
+			this.results = results;
+		}
+	}
+}
@@ -0,0 +1,359 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.function.IntFunction;
+import java.util.function.IntUnaryOperator;
+
+/**
+ * Adds up the matches of a search in arrays indexed by document id,
+ * instead of a map from each location to its {@link InvertedIndex.Result}.
+ * Each thread reuses one accumulator, so a search allocates no objects
+ * per matching location until the results are made. A top results search
+ * only makes the results it returns.
+ *
+ * An accumulator is only valid until the same thread asks for the next
+ * one, so the results have to be made before searching again. Searches
+ * that add up several queries at once get the accumulators of a batch
+ * with {@link #batch(int, int)}, which are valid under the same rule.
+ *
+ * @author hayde
+ */
+public class ScoreAccumulator
+{
+	/**
+	 * accumulator of each thread
+	 */
+	private static final ThreadLocal<ScoreAccumulator> POOL = ThreadLocal.withInitial(ScoreAccumulator::new);
+
+	/**
+	 * accumulators of the batch searches of each thread
+	 */
+	private static final ThreadLocal<ScoreAccumulator[]> BATCHES = ThreadLocal.withInitial(() -> new ScoreAccumulator[0]);
+
+	/**
+	 * matches of each document id, zero for the ids not touched
+	 */
+	private int[] counts;
+
+	/**
+	 * ids with matches in the order they were first matched
+	 */
+	private int[] touched;
+
+	/**
+	 * number of ids with matches
+	 */
+	private int size;
+
+	/**
+	 * Initializes an empty accumulator
+	 */
+	private ScoreAccumulator()
+	{
+		this.counts = new int[16];
+		this.touched = new int[16];
+		this.size = 0;
+	}
+
+	/**
+	 * Returns the cleared accumulator of this thread
+	 *
+	 * @param documents			number of document ids expected
+	 * @return ScoreAccumulator	the accumulator of this thread
+	 */
+	public static ScoreAccumulator get(int documents)
+	{
+		ScoreAccumulator accumulator = POOL.get();
+		accumulator.clear(documents);
+		return accumulator;
+	}
+
+	/**
+	 * Returns the cleared accumulators of this thread for a batch of
+	 * queries, one for each query
+	 *
+	 * @param queries				number of queries of the batch
+	 * @param documents				number of document ids expected
+	 * @return ScoreAccumulator[]	accumulators of this thread, at least one per query
+	 */
+	public static ScoreAccumulator[] batch(int queries, int documents)
+	{
+		ScoreAccumulator[] batch = BATCHES.get();
+
+		if (batch.length < queries)
+		{
+			batch = Arrays.copyOf(batch, queries);
+
+			for (int i = 0; i < queries; i++)
+			{
+				if (batch[i] == null)
+				{
+					batch[i] = new ScoreAccumulator();
+				}
+			}
+
+			BATCHES.set(batch);
+		}
+
+		for (int i = 0; i < queries; i++)
+		{
+			batch[i].clear(documents);
+		}
+
+		return batch;
+	}
+
+	/**
+	 * Zeroes the ids touched by the last search and makes room for the ids
+	 * of the next one
+	 *
+	 * @param documents			number of document ids expected
+	 */
+	private void clear(int documents)
+	{
+		for (int i = 0; i < size; i++)
+		{
+			counts[touched[i]] = 0;
+		}
+
+		size = 0;
+
+		if (counts.length < documents)
+		{
+			counts = new int[documents];
+		}
+	}
+
+	/**
+	 * Adds matches to a document
+	 *
+	 * @param id				document id
+	 * @param hits				number of matches, more than zero
+	 */
+	public void add(int id, int hits)
+	{
+		if (id >= counts.length)
+		{
+			// documents added while searching can have newer ids
+			counts = Arrays.copyOf(counts, Math.max(id + 1, counts.length * 2));
+		}
+
+		if (counts[id] == 0)
+		{
+			if (size == touched.length)
+			{
+				touched = Arrays.copyOf(touched, size * 2);
+			}
+
+			touched[size++] = id;
+		}
+
+		counts[id] += hits;
+	}
+
+	/**
+	 * Returns the number of documents with matches
+	 *
+	 * @return int				number of documents with matches
+	 */
+	public int size()
+	{
+		return size;
+	}
+
+	/**
+	 * Makes a result for every document with matches
+	 *
+	 * @param locations			location of each document id
+	 * @param lengths			word count of each document id
+	 * @return ArrayList		unsorted results
+	 */
+	public ArrayList<InvertedIndex.Result> results(IntFunction<String> locations, IntUnaryOperator lengths)
+	{
+		ArrayList<InvertedIndex.Result> results = new ArrayList<>(size);
+
+		for (int i = 0; i < size; i++)
+		{
+			results.add(result(touched[i], locations, lengths));
+		}
+
+		return results;
+	}
+
+	/**
+	 * Makes a result for only the best k documents. The ids are ranked in
+	 * a heap with the worst of the best ids so far on top, in the same
+	 * order as {@link InvertedIndex.Result#compareTo(InvertedIndex.Result)}.
+	 *
+	 * @param k					most results to return
+	 * @param locations			location of each document id
+	 * @param lengths			word count of each document id
+	 * @return ArrayList		best k results in sorted order
+	 */
+	public ArrayList<InvertedIndex.Result> top(int k, IntFunction<String> locations, IntUnaryOperator lengths)
+	{
+		if (size <= k)
+		{
+			ArrayList<InvertedIndex.Result> results = results(locations, lengths);
+			Collections.sort(results);
+			return results;
+		}
+
+		int[] heap = new int[k];
+		double[] scores = new double[k];
+		int filled = 0;
+
+		for (int i = 0; i < size && k > 0; i++)
+		{
+			int id = touched[i];
+			double score = (double) counts[id] / (double) lengths.applyAsInt(id);
+
+			if (filled < k)
+			{
+				heap[filled] = id;
+				scores[filled] = score;
+				siftUp(heap, scores, filled++, locations);
+			}
+			else if (compare(id, score, heap[0], scores[0], locations) < 0)
+			{
+				heap[0] = id;
+				scores[0] = score;
+				siftDown(heap, scores, filled, locations);
+			}
+		}
+
+		ArrayList<InvertedIndex.Result> results = new ArrayList<>(filled);
+
+		for (int i = 0; i < filled; i++)
+		{
+			results.add(result(heap[i], locations, lengths));
+		}
+
+		Collections.sort(results);
+		return results;
+	}
+
+	/**
+	 * Makes the result of a document
+	 *
+	 * @param id				document id
+	 * @param locations			location of each document id
+	 * @param lengths			word count of each document id
+	 * @return Result			result of the document
+	 */
+	private InvertedIndex.Result result(int id, IntFunction<String> locations, IntUnaryOperator lengths)
+	{
+		InvertedIndex.Result result = new InvertedIndex.Result(locations.apply(id));
+		result.update(counts[id], lengths.applyAsInt(id));
+		return result;
+	}
+
+	/**
+	 * Compares two documents like their results would be compared, the
+	 * better document first
+	 *
+	 * @param a					first document id
+	 * @param scoreA			score of the first document
+	 * @param b					second document id
+	 * @param scoreB			score of the second document
+	 * @param locations			location of each document id
+	 * @return int				negative if the first document is better
+	 */
+	private int compare(int a, double scoreA, int b, double scoreB, IntFunction<String> locations)
+	{
+		int compared = Double.compare(scoreB, scoreA);
+
+		if (compared == 0)
+		{
+			compared = Integer.compare(counts[b], counts[a]);
+		}
+
+		if (compared == 0)
+		{
+			compared = locations.apply(a).compareTo(locations.apply(b));
+		}
+
+		return compared;
+	}
+
+	/**
+	 * Moves an entry up the heap until its parent is worse
+	 *
+	 * @param heap				document ids of the heap
+	 * @param scores			scores of the heap
+	 * @param i					entry to move
+	 * @param locations			location of each document id
+	 */
+	private void siftUp(int[] heap, double[] scores, int i, IntFunction<String> locations)
+	{
+		while (i > 0)
+		{
+			int parent = (i - 1) >>> 1;
+
+			if (compare(heap[i], scores[i], heap[parent], scores[parent], locations) < 0)
+			{
+				break;
+			}
+
+			swap(heap, scores, i, parent);
+			i = parent;
+		}
+	}
+
+	/**
+	 * Moves the top of the heap down until its children are better
+	 *
+	 * @param heap				document ids of the heap
+	 * @param scores			scores of the heap
+	 * @param filled			number of entries in the heap
+	 * @param locations			location of each document id
+	 */
+	private void siftDown(int[] heap, double[] scores, int filled, IntFunction<String> locations)
+	{
+		int i = 0;
+
+		while (true)
+		{
+			int worst = i;
+			int left = 2 * i + 1;
+			int right = left + 1;
+
+			if (left < filled && compare(heap[left], scores[left], heap[worst], scores[worst], locations) > 0)
+			{
+				worst = left;
+			}
+
+			if (right < filled && compare(heap[right], scores[right], heap[worst], scores[worst], locations) > 0)
+			{
+				worst = right;
+			}
+
+			if (worst == i)
+			{
+				return;
+			}
+
+			swap(heap, scores, i, worst);
+			i = worst;
+		}
+	}
+
+	/**
+	 * Swaps two entries of the heap
+	 *
+	 * @param heap				document ids of the heap
+	 * @param scores			scores of the heap
+	 * @param i					first entry
+	 * @param j					second entry
+	 */
+	private static void swap(int[] heap, double[] scores, int i, int j)
+	{
+		int id = heap[i];
+		heap[i] = heap[j];
+		heap[j] = id;
+
+		double score = scores[i];
+		scores[i] = scores[j];
+		scores[j] = score;
+	}
+}
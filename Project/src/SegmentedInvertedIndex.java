@@ -0,0 +1,853 @@
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+
+/**
+ * A thread-safe {@link InvertedIndex} split in to segments so it can be
+ * searched while it is still being built. New words go in to a small
+ * active segment, which is sealed in to an immutable
+ * {@link FrozenInvertedIndex} once it holds enough words. A background
+ * thread merges the smallest sealed segments whenever there are too many.
+ *
+ * Writers only lock the small active segment, and searches only hold that
+ * lock while counting the active segment. The sealed segments never
+ * change and are searched without any locking, so a crawl can keep adding
+ * to the index without stalling the searches of a running server.
+ *
+ * @see FrozenInvertedIndex#merge(FrozenInvertedIndex, FrozenInvertedIndex)
+ * @see ReadWriteLock
+ */
+public class SegmentedInvertedIndex extends InvertedIndex implements AutoCloseable
+{
+	/**
+	 * default number of words an active segment holds before it is sealed
+	 */
+	public static final int SEGMENT_SIZE = 1 << 18;
+
+	/**
+	 * default number of sealed segments allowed before they are merged
+	 */
+	public static final int MAX_SEGMENTS = 8;
+
+	/**
+	 * number of words an active segment holds before it is sealed
+	 */
+	private final int segmentSize;
+
+	/**
+	 * number of sealed segments allowed before they are merged
+	 */
+	private final int maxSegments;
+
+	/**
+	 * The lock protecting the active segment and the swap of the segments.
+	 */
+	private final ReadWriteLock lock;
+
+	/**
+	 * segment new words are added to
+	 */
+	private InvertedIndex active;
+
+	/**
+	 * number of words added to the active segment
+	 */
+	private int activeSize;
+
+	/**
+	 * immutable list of sealed segments, replaced as a whole on every change
+	 */
+	private volatile List<FrozenInvertedIndex> sealed;
+
+	/**
+	 * word count of every location across all segments
+	 */
+	private final ConcurrentHashMap<String, Integer> counts;
+
+	/**
+	 * location of each document id across all segments
+	 */
+	private final List<String> locations;
+
+	/**
+	 * document id of each location across all segments
+	 */
+	private final ConcurrentHashMap<String, Integer> locationIds;
+
+	/**
+	 * background thread that merges sealed segments
+	 */
+	private final Merger merger;
+
+	/**
+	 * Initializes a segmented index with the default segment sizes.
+	 */
+	public SegmentedInvertedIndex()
+	{
+		this(SEGMENT_SIZE, MAX_SEGMENTS);
+	}
+
+	/**
+	 * Initializes a segmented index.
+	 *
+	 * @param segmentSize		number of words an active segment holds before it is sealed
+	 * @param maxSegments		number of sealed segments allowed before they are merged
+	 */
+	public SegmentedInvertedIndex(int segmentSize, int maxSegments)
+	{
+		super();
+		this.segmentSize = segmentSize;
+		this.maxSegments = Math.max(maxSegments, 1);
+		this.lock = new ReadWriteLock();
+		this.active = new InvertedIndex();
+		this.activeSize = 0;
+		this.sealed = Collections.emptyList();
+		this.counts = new ConcurrentHashMap<>();
+		this.locations = Collections.synchronizedList(new ArrayList<String>());
+		this.locationIds = new ConcurrentHashMap<>();
+		this.merger = new Merger();
+		this.merger.start();
+	}
+
+	/**
+	 * Adds a word to the active segment, sealing it if it is full.
+	 *
+	 * @param word		word to be added
+	 * @param pretty	file to be added
+	 * @param num 		number to be added for position
+	 */
+	@Override
+	public void addIndex(String word, String pretty, int num)
+	{
+		lock.writeLock().lock();
+		try
+		{
+			active.addIndex(word, pretty, num);
+			counts.merge(pretty, num, Math::max);
+			assignId(pretty);
+			activeSize++;
+			sealIfFull();
+			changed();
+		}
+		finally
+		{
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Adds every word of a document to the active segment, sealing it if
+	 * it is full.
+	 *
+	 * @param location		location of the document
+	 * @param words			positions of each word in the document
+	 * @param length		word count of the document
+	 */
+	@Override
+	public void addDocument(String location, Map<String, PositionList> words, int length)
+	{
+		if (words.isEmpty())
+		{
+			return;
+		}
+
+		lock.writeLock().lock();
+		try
+		{
+			active.addDocument(location, words, length);
+			counts.merge(location, length, Math::max);
+			assignId(location);
+			activeSize += length;
+			sealIfFull();
+			changed();
+		}
+		finally
+		{
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Merges a local index in to the active segment, sealing it if it is full.
+	 *
+	 * @param local			foreign index to be added
+	 */
+	@Override
+	public void addAll(InvertedIndex local)
+	{
+		addAll(local, word -> true);
+	}
+
+	/**
+	 * Merges some words of a local index in to the active segment, sealing
+	 * it if it is full.
+	 *
+	 * @param local			foreign index to be added
+	 * @param words			which of the words to add
+	 */
+	@Override
+	public void addAll(InvertedIndex local, Predicate<String> words)
+	{
+		Map<String, Integer> added = local.getCount();
+
+		lock.writeLock().lock();
+		try
+		{
+			active.addAll(local, words);
+
+			for (Map.Entry<String, Integer> entry : added.entrySet())
+			{
+				counts.merge(entry.getKey(), entry.getValue(), Math::max);
+				assignId(entry.getKey());
+				activeSize += entry.getValue();
+			}
+
+			sealIfFull();
+			changed();
+		}
+		finally
+		{
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Assigns the next document id to a new location, must be called while
+	 * holding the write lock
+	 *
+	 * @param location		location to assign an id to
+	 */
+	private void assignId(String location)
+	{
+		if (!locationIds.containsKey(location))
+		{
+			locationIds.put(location, locations.size());
+			locations.add(location);
+		}
+	}
+
+	/**
+	 * Seals the active segment once it is full, must be called while
+	 * holding the write lock
+	 */
+	private void sealIfFull()
+	{
+		if (activeSize >= segmentSize)
+		{
+			seal();
+		}
+	}
+
+	/**
+	 * Seals the active segment and starts a new one, must be called while
+	 * holding the write lock
+	 */
+	private void seal()
+	{
+		if (activeSize == 0)
+		{
+			return;
+		}
+
+		ArrayList<FrozenInvertedIndex> segments = new ArrayList<>(sealed);
+		segments.add(active.freeze());
+		sealed = Collections.unmodifiableList(segments);
+
+		active = new InvertedIndex();
+		activeSize = 0;
+		merger.wake();
+	}
+
+	/**
+	 * Replaces two sealed segments with their merge. Segments are only ever
+	 * removed by merging, so both are still in the list.
+	 *
+	 * @param a				first segment that was merged
+	 * @param b				second segment that was merged
+	 * @param merged		merge of the two segments
+	 */
+	private void replace(FrozenInvertedIndex a, FrozenInvertedIndex b, FrozenInvertedIndex merged)
+	{
+		lock.writeLock().lock();
+		try
+		{
+			ArrayList<FrozenInvertedIndex> segments = new ArrayList<>(sealed);
+			segments.remove(a);
+			segments.remove(b);
+			segments.add(merged);
+			sealed = Collections.unmodifiableList(segments);
+		}
+		finally
+		{
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Returns the segments in a consistent state with each other, the
+	 * active segment first. The active segment is still mutable and can
+	 * only be used while holding the read lock.
+	 *
+	 * @return List			every segment of the index
+	 */
+	private List<InvertedIndex> segments()
+	{
+		ArrayList<InvertedIndex> segments = new ArrayList<>();
+		segments.add(active);
+		segments.addAll(sealed);
+		return segments;
+	}
+
+	/**
+	 * Returns the number of sealed segments.
+	 *
+	 * @return int				number of sealed segments
+	 */
+	public int numSegments()
+	{
+		return sealed.size();
+	}
+
+	/**
+	 * Returns a copy of the active segment and the sealed segments, taken
+	 * together under the read lock. The segments are never changed, so
+	 * they can be read without the lock while the index keeps growing.
+	 *
+	 * @return List			every segment of the index at one moment
+	 */
+	private List<FrozenInvertedIndex> snapshot()
+	{
+		ArrayList<FrozenInvertedIndex> segments = new ArrayList<>();
+
+		lock.readLock().lock();
+		try
+		{
+			if (activeSize > 0)
+			{
+				segments.add(active.freeze());
+			}
+			segments.addAll(sealed);
+		}
+		finally
+		{
+			lock.readLock().unlock();
+		}
+
+		return segments;
+	}
+
+	/**
+	 * Returns the words of some segments in sorted order
+	 *
+	 * @param segments		segments to read
+	 * @return TreeSet		every word of the segments
+	 */
+	private static TreeSet<String> words(List<FrozenInvertedIndex> segments)
+	{
+		TreeSet<String> words = new TreeSet<>();
+
+		for (FrozenInvertedIndex segment : segments)
+		{
+			words.addAll(segment.getWords());
+		}
+
+		return words;
+	}
+
+	/**
+	 * Combines the postings of a word from some segments. A location with
+	 * the word in more than one segment gets the positions of all of them.
+	 *
+	 * @param word			word to look up
+	 * @param segments		segments to read
+	 * @return TreeMap		positions of the word at each location, sorted by location
+	 */
+	private static TreeMap<String, PositionList> postings(String word, List<FrozenInvertedIndex> segments)
+	{
+		TreeMap<String, PositionList> named = new TreeMap<>();
+
+		for (FrozenInvertedIndex segment : segments)
+		{
+			for (int id : segment.documents(word))
+			{
+				PositionList positions = new PositionList(segment.positions(word, id));
+				named.merge(segment.getLocation(id), positions, (a, b) ->
+				{
+					a.addAll(b);
+					return a;
+				});
+			}
+		}
+
+		return named;
+	}
+
+	/**
+	 * Passes every posting of every segment to the consumer, merging the
+	 * segments one word at a time. The postings of each word are passed
+	 * in order of location. Only copying the active segment holds the read
+	 * lock, so writers are not held up and the segments are left as they
+	 * are.
+	 *
+	 * @param consumer		consumer of each word, location and positions
+	 */
+	@Override
+	public void forEachPosting(PostingConsumer consumer)
+	{
+		List<FrozenInvertedIndex> segments = snapshot();
+
+		for (String word : words(segments))
+		{
+			for (Map.Entry<String, PositionList> entry : postings(word, segments).entrySet())
+			{
+				consumer.accept(word, entry.getKey(), entry.getValue());
+			}
+		}
+	}
+
+	/**
+	 * Adds up the matches of every segment. Only the active segment is
+	 * counted while holding the read lock, the sealed segments are counted
+	 * afterwards without it.
+	 *
+	 * @param queries			Collection of queries to be searched
+	 * @param exact				boolean to know whether we are doing exact
+	 * @param matches			map of location to matches that is added to
+	 */
+	@Override
+	public void countMatches(Collection<String> queries, boolean exact, Map<String, Integer> matches)
+	{
+		List<FrozenInvertedIndex> segments;
+		Collection<String> words;
+
+		lock.readLock().lock();
+		try
+		{
+			// read both under the lock so a segment sealed meanwhile is not counted twice
+			segments = sealed;
+
+			// partial queries are expanded once over every segment, so the cap applies to all of them together
+			words = exact ? queries : queries.stream()
+					.flatMap(query -> matchingWords(query, false).stream())
+					.collect(Collectors.toList());
+
+			active.countMatches(words, true, matches);
+		}
+		finally
+		{
+			lock.readLock().unlock();
+		}
+
+		for (FrozenInvertedIndex segment : segments)
+		{
+			segment.countMatches(words, true, matches);
+		}
+	}
+
+	/**
+	 * Searches every segment and combines the matches of each location
+	 * before scoring them.
+	 *
+	 * @param queries				Collection of queries
+	 * @param exact					boolean to know whether we are doing exact
+	 * @return ArrayList			ArrayList of Results
+	 */
+	@Override
+	ArrayList<Result> findResults(Collection<String> queries, boolean exact)
+	{
+		Map<String, Integer> matches = new HashMap<>();
+		countMatches(queries, exact, matches);
+
+		ArrayList<Result> results = new ArrayList<>(matches.size());
+
+		for (Map.Entry<String, Integer> entry : matches.entrySet())
+		{
+			Result result = new Result(entry.getKey());
+			result.update(entry.getValue(), counts.get(entry.getKey()));
+			results.add(result);
+		}
+
+		return results;
+	}
+
+	/**
+	 * Finds the best results from the combined matches of each location.
+	 *
+	 * @param queries				Collection of queries
+	 * @param exact					boolean to know whether we are doing exact
+	 * @param k						most results to return
+	 * @return ArrayList			best k Results in sorted order
+	 */
+	@Override
+	ArrayList<Result> findTop(Collection<String> queries, boolean exact, int k)
+	{
+		return topResults(findResults(queries, exact), k);
+	}
+
+	/**
+	 * Returns the words a query matches in any segment, capped again
+	 * after the words of every segment are merged.
+	 *
+	 * @param query			query to look up
+	 * @param exact			boolean to know whether we are doing exact
+	 * @return List			words the query matches
+	 */
+	@Override
+	List<String> matchingWords(String query, boolean exact)
+	{
+		TreeSet<String> words = new TreeSet<>();
+
+		lock.readLock().lock();
+		try
+		{
+			for (InvertedIndex segment : segments())
+			{
+				words.addAll(segment.matchingWords(query, exact));
+			}
+		}
+		finally
+		{
+			lock.readLock().unlock();
+		}
+
+		return words.stream().limit(getMaxExpansions()).collect(Collectors.toList());
+	}
+
+	@Override
+	void addHits(String word, int[] ids, int[] counts)
+	{
+		for (int i = 0; i < ids.length; i++)
+		{
+			counts[i] += numLocation(word, getLocation(ids[i]));
+		}
+	}
+
+	@Override
+	void scatter(String word, int[] queries, ScoreAccumulator[] matches)
+	{
+		scatterByLocation(word, queries, matches);
+	}
+
+	@Override
+	int frequency(String word)
+	{
+		return getLocations(word).size();
+	}
+
+	@Override
+	int[] documents(String word)
+	{
+		return documentsByLocation(word);
+	}
+
+	@Override
+	int[] positions(String word, int id)
+	{
+		return positionsByLocation(word, id);
+	}
+
+	@Override
+	int wordCount(int id)
+	{
+		return counts.getOrDefault(getLocation(id), 0);
+	}
+
+	@Override
+	public Map<String, Integer> getCount()
+	{
+		return Collections.unmodifiableMap(new TreeMap<String, Integer>(counts));
+	}
+
+	@Override
+	public Set<String> getLocations()
+	{
+		return Collections.unmodifiableSet(new TreeSet<String>(counts.keySet()));
+	}
+
+	@Override
+	public int getLocationId(String location)
+	{
+		return locationIds.getOrDefault(location, -1);
+	}
+
+	@Override
+	public String getLocation(int id)
+	{
+		return locations.get(id);
+	}
+
+	@Override
+	public Set<String> getWords()
+	{
+		TreeSet<String> words = new TreeSet<>();
+
+		lock.readLock().lock();
+		try
+		{
+			for (InvertedIndex segment : segments())
+			{
+				words.addAll(segment.getWords());
+			}
+		}
+		finally
+		{
+			lock.readLock().unlock();
+		}
+
+		return Collections.unmodifiableSet(words);
+	}
+
+	@Override
+	public Set<Integer> getPositions(String word, String location)
+	{
+		PositionList positions = new PositionList();
+
+		lock.readLock().lock();
+		try
+		{
+			for (InvertedIndex segment : segments())
+			{
+				positions.addAll(segment.getPositions(word, location));
+			}
+		}
+		finally
+		{
+			lock.readLock().unlock();
+		}
+
+		return Collections.unmodifiableSet(positions);
+	}
+
+	@Override
+	public int numLocation(String word, String file)
+	{
+		return getPositions(word, file).size();
+	}
+
+	@Override
+	public Set<String> getLocations(String word)
+	{
+		TreeSet<String> named = new TreeSet<>();
+
+		lock.readLock().lock();
+		try
+		{
+			for (InvertedIndex segment : segments())
+			{
+				named.addAll(segment.getLocations(word));
+			}
+		}
+		finally
+		{
+			lock.readLock().unlock();
+		}
+
+		return Collections.unmodifiableSet(named);
+	}
+
+	/**
+	 * Writes the index as JSON, merging the segments one word at a time
+	 * like {@link #forEachPosting(PostingConsumer)}, so exporting neither
+	 * holds up writers nor changes the segments.
+	 *
+	 * @param path		File to be written to
+	 * @throws IOException
+	 */
+	@Override
+	public void toJson(Path path) throws IOException
+	{
+		List<FrozenInvertedIndex> segments = snapshot();
+
+		try (BufferedWriter writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8))
+		{
+			writer.write("{\n");
+			boolean first = true;
+
+			for (String word : words(segments))
+			{
+				if (!first)
+				{
+					writer.write(",\n");
+				}
+				first = false;
+
+				JsonWriter.quote(word, writer, 1);
+				writer.write(": ");
+				JsonWriter.asNestedObject(postings(word, segments), writer, 1);
+			}
+			writer.write('\n');
+			writer.write("}\n");
+		}
+	}
+
+	/**
+	 * Seals the active segment and merges every segment in to one
+	 * snapshot, which stays the only segment of this index.
+	 *
+	 * @return FrozenInvertedIndex		snapshot of this index
+	 */
+	@Override
+	public FrozenInvertedIndex freeze()
+	{
+		lock.writeLock().lock();
+		try
+		{
+			seal();
+		}
+		finally
+		{
+			lock.writeLock().unlock();
+		}
+
+		synchronized (merger.mergeLock)
+		{
+			List<FrozenInvertedIndex> segments = sealed;
+
+			if (segments.isEmpty())
+			{
+				return new InvertedIndex().freeze();
+			}
+
+			FrozenInvertedIndex merged = segments.get(0);
+
+			for (int i = 1; i < segments.size(); i++)
+			{
+				FrozenInvertedIndex next = FrozenInvertedIndex.merge(merged, segments.get(i));
+				replace(merged, segments.get(i), next);
+				merged = next;
+			}
+
+			return merged;
+		}
+	}
+
+	/**
+	 * Stops the background merging thread and waits for a merge it has
+	 * started to finish, so nothing changes the segments afterwards. The
+	 * index can still be used but sealed segments are no longer merged
+	 * unless frozen. Call this once building is done.
+	 */
+	@Override
+	public void close()
+	{
+		merger.shutdown();
+
+		try
+		{
+			merger.join();
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Background thread that waits until there are too many sealed
+	 * segments and then merges the two smallest of them. Merges happen
+	 * while synchronized on the merge lock so they never overlap with the
+	 * merging of {@link #freeze()}. Waiting uses a separate monitor, since
+	 * writers wake the merger while holding the write lock that a merge
+	 * needs to swap in its result.
+	 */
+	private class Merger extends Thread
+	{
+		/**
+		 * monitor used to wait for sealed segments
+		 */
+		private final Object signal;
+
+		/**
+		 * lock held while merging segments
+		 */
+		private final Object mergeLock;
+
+		/**
+		 * Used to signal the merger should stop
+		 */
+		private volatile boolean shutdown;
+
+		/**
+		 * Constructor for the merger thread
+		 */
+		public Merger()
+		{
+			super("segment-merger");
+			setDaemon(true);
+			signal = new Object();
+			mergeLock = new Object();
+			shutdown = false;
+		}
+
+		/**
+		 * Wakes the merger up after a segment was sealed
+		 */
+		public void wake()
+		{
+			synchronized (signal)
+			{
+				signal.notifyAll();
+			}
+		}
+
+		/**
+		 * Asks the merger to stop
+		 */
+		public void shutdown()
+		{
+			shutdown = true;
+			wake();
+		}
+
+		@Override
+		public void run()
+		{
+			while (!shutdown)
+			{
+				synchronized (signal)
+				{
+					while (!shutdown && sealed.size() <= maxSegments)
+					{
+						try
+						{
+							signal.wait();
+						}
+						catch (InterruptedException e)
+						{
+							Thread.currentThread().interrupt();
+							return;
+						}
+					}
+				}
+
+				synchronized (mergeLock)
+				{
+					List<FrozenInvertedIndex> segments = sealed;
+
+					if (!shutdown && segments.size() > maxSegments)
+					{
+						ArrayList<FrozenInvertedIndex> smallest = new ArrayList<>(segments);
+						smallest.sort((a, b) -> Integer.compare(a.numPostings(), b.numPostings()));
+						FrozenInvertedIndex a = smallest.get(0);
+						FrozenInvertedIndex b = smallest.get(1);
+						replace(a, b, FrozenInvertedIndex.merge(a, b));
+					}
+				}
+			}
+		}
+	}
+}
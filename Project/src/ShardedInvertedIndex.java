@@ -0,0 +1,521 @@
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+
+/**
+ * A thread-safe {@link InvertedIndex} split in to several shards that are
+ * locked independently. Words are assigned to a shard by their hash and
+ * the word counts of locations to a count stripe by the hash of the
+ * location, so threads adding different words or locations rarely wait
+ * on each other the way they do on the single lock of a
+ * {@link ThreadSafeInvertedIndex}.
+ *
+ * An exact search only visits the shards holding the query words. A
+ * partial search has to visit every shard, since words with the same
+ * prefix can be in any of them.
+ *
+ * @see ThreadSafeInvertedIndex
+ */
+public class ShardedInvertedIndex extends InvertedIndex
+{
+	/**
+	 * default number of shards
+	 */
+	public static final int DEFAULT = 16;
+
+	/**
+	 * shards holding the words, each with its own lock
+	 */
+	private final ThreadSafeInvertedIndex[] shards;
+
+	/**
+	 * word count of each location, split by the hash of the location
+	 */
+	private final ArrayList<TreeMap<String, Integer>> counts;
+
+	/**
+	 * lock of each count stripe
+	 */
+	private final ReadWriteLock[] countLocks;
+
+	/**
+	 * location of each document id across all shards
+	 */
+	private final List<String> locations;
+
+	/**
+	 * document id of each location across all shards
+	 */
+	private final ConcurrentHashMap<String, Integer> locationIds;
+
+	/**
+	 * Initializes a sharded index with the default number of shards.
+	 */
+	public ShardedInvertedIndex()
+	{
+		this(DEFAULT);
+	}
+
+	/**
+	 * Initializes a sharded index.
+	 *
+	 * @param shards		number of shards to split the index in to
+	 */
+	public ShardedInvertedIndex(int shards)
+	{
+		super();
+		shards = Math.max(shards, 1);
+		this.shards = new ThreadSafeInvertedIndex[shards];
+		this.counts = new ArrayList<>(shards);
+		this.countLocks = new ReadWriteLock[shards];
+
+		for (int i = 0; i < shards; i++)
+		{
+			this.shards[i] = new ThreadSafeInvertedIndex();
+			this.counts.add(new TreeMap<>());
+			this.countLocks[i] = new ReadWriteLock();
+		}
+
+		this.locations = Collections.synchronizedList(new ArrayList<String>());
+		this.locationIds = new ConcurrentHashMap<>();
+	}
+
+	/**
+	 * Returns the shard or stripe a key belongs to
+	 *
+	 * @param key			word or location
+	 * @return int			shard of the key
+	 */
+	private int shardOf(String key)
+	{
+		return Math.floorMod(key.hashCode(), shards.length);
+	}
+
+	/**
+	 * Returns the shard holding a word
+	 *
+	 * @param word			word to look up
+	 * @return shard		shard of the word
+	 */
+	private ThreadSafeInvertedIndex shard(String word)
+	{
+		return shards[shardOf(word)];
+	}
+
+	/**
+	 * Updates the word count of a location in its count stripe and
+	 * assigns the location a document id if it is new. Writers call this
+	 * before adding postings to the shards, so a search that finds a
+	 * posting always finds the count of its location too.
+	 *
+	 * @param location		location to update
+	 * @param num			word count to combine with the current count
+	 */
+	private void updateCount(String location, int num)
+	{
+		int stripe = shardOf(location);
+
+		countLocks[stripe].writeLock().lock();
+		try
+		{
+			counts.get(stripe).merge(location, num, Math::max);
+		}
+		finally
+		{
+			countLocks[stripe].writeLock().unlock();
+		}
+
+		if (!locationIds.containsKey(location))
+		{
+			synchronized (locations)
+			{
+				if (!locationIds.containsKey(location))
+				{
+					locationIds.put(location, locations.size());
+					locations.add(location);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Returns the word count of a location
+	 *
+	 * @param location		location to look up
+	 * @return int			word count of the location
+	 */
+	private int getCount(String location)
+	{
+		int stripe = shardOf(location);
+
+		countLocks[stripe].readLock().lock();
+		try
+		{
+			return counts.get(stripe).getOrDefault(location, 0);
+		}
+		finally
+		{
+			countLocks[stripe].readLock().unlock();
+		}
+	}
+
+	/**
+	 * Adds a word to its shard, locking only that shard and the count
+	 * stripe of the location.
+	 *
+	 * @param word		word to be added
+	 * @param pretty	file to be added
+	 * @param num 		number to be added for position
+	 */
+	@Override
+	public void addIndex(String word, String pretty, int num)
+	{
+		updateCount(pretty, num);
+		shard(word).addIndex(word, pretty, num);
+		changed();
+	}
+
+	/**
+	 * Splits the words of a document between the shards, locking each
+	 * shard the document has words in once.
+	 *
+	 * @param location		location of the document
+	 * @param words			positions of each word in the document
+	 * @param length		word count of the document
+	 */
+	@Override
+	public void addDocument(String location, Map<String, PositionList> words, int length)
+	{
+		if (words.isEmpty())
+		{
+			return;
+		}
+
+		HashMap<Integer, Map<String, PositionList>> grouped = new HashMap<>();
+
+		for (Map.Entry<String, PositionList> entry : words.entrySet())
+		{
+			grouped.computeIfAbsent(shardOf(entry.getKey()), shard -> new HashMap<>()).put(entry.getKey(), entry.getValue());
+		}
+
+		updateCount(location, length);
+
+		for (Map.Entry<Integer, Map<String, PositionList>> entry : grouped.entrySet())
+		{
+			shards[entry.getKey()].addDocument(location, entry.getValue(), length);
+		}
+
+		changed();
+	}
+
+	/**
+	 * Splits a local index between the shards, locking one shard at a time.
+	 *
+	 * @param local			foreign index to be added
+	 */
+	@Override
+	public void addAll(InvertedIndex local)
+	{
+		addAll(local, word -> true);
+	}
+
+	/**
+	 * Splits some words of a local index between the shards, locking one
+	 * shard at a time. The local index is read once and its postings are
+	 * sorted in to a slice for each shard, so each shard only merges its
+	 * own words. Every slice counts every location, like the shards do.
+	 *
+	 * @param local			foreign index to be added
+	 * @param words			which of the words to add
+	 */
+	@Override
+	public void addAll(InvertedIndex local, Predicate<String> words)
+	{
+		Map<String, Integer> added = local.getCount();
+		InvertedIndex[] slices = new InvertedIndex[shards.length];
+
+		for (int i = 0; i < slices.length; i++)
+		{
+			slices[i] = new InvertedIndex();
+
+			for (Map.Entry<String, Integer> entry : added.entrySet())
+			{
+				slices[i].addCount(entry.getKey(), entry.getValue());
+			}
+		}
+
+		local.forEachPosting((word, location, positions) ->
+		{
+			if (words.test(word))
+			{
+				slices[shardOf(word)].addPosting(word, location, positions);
+			}
+		});
+
+		for (Map.Entry<String, Integer> entry : added.entrySet())
+		{
+			updateCount(entry.getKey(), entry.getValue());
+		}
+
+		for (int i = 0; i < shards.length; i++)
+		{
+			shards[i].addAll(slices[i]);
+		}
+
+		changed();
+	}
+
+	/**
+	 * Passes every posting to the consumer from a snapshot of the merged
+	 * shards, so the postings of each word come together in one pass.
+	 *
+	 * @param consumer		consumer of each word, location and positions
+	 */
+	@Override
+	public void forEachPosting(PostingConsumer consumer)
+	{
+		freeze().forEachPosting(consumer);
+	}
+
+	/**
+	 * Adds up the matches of the shards holding the words of the queries.
+	 * Partial queries are expanded over every shard first, so each shard
+	 * only counts the exact words it holds.
+	 *
+	 * @param queries			Collection of queries to be searched
+	 * @param exact				boolean to know whether we are doing exact
+	 * @param matches			map of location to matches that is added to
+	 */
+	@Override
+	public void countMatches(Collection<String> queries, boolean exact, Map<String, Integer> matches)
+	{
+		// partial queries are expanded once here, so the cap applies to the words of every shard together
+		Collection<String> words = exact ? queries : queries.stream()
+				.flatMap(query -> matchingWords(query, false).stream())
+				.collect(Collectors.toList());
+
+		// group the words so only the shards holding them are visited
+		HashMap<Integer, List<String>> grouped = new HashMap<>();
+
+		for (String word : words)
+		{
+			grouped.computeIfAbsent(shardOf(word), shard -> new ArrayList<>()).add(word);
+		}
+
+		for (Map.Entry<Integer, List<String>> entry : grouped.entrySet())
+		{
+			shards[entry.getKey()].countMatches(entry.getValue(), true, matches);
+		}
+	}
+
+	/**
+	 * Searches the shards and scores the combined matches of each location.
+	 *
+	 * @param queries				Collection of queries
+	 * @param exact					boolean to know whether we are doing exact
+	 * @return ArrayList			ArrayList of Results
+	 */
+	@Override
+	ArrayList<Result> findResults(Collection<String> queries, boolean exact)
+	{
+		Map<String, Integer> matches = new HashMap<>();
+		countMatches(queries, exact, matches);
+
+		ArrayList<Result> results = new ArrayList<>(matches.size());
+
+		for (Map.Entry<String, Integer> entry : matches.entrySet())
+		{
+			Result result = new Result(entry.getKey());
+			result.update(entry.getValue(), getCount(entry.getKey()));
+			results.add(result);
+		}
+
+		return results;
+	}
+
+	/**
+	 * Finds the best results from the combined matches of each location.
+	 *
+	 * @param queries				Collection of queries
+	 * @param exact					boolean to know whether we are doing exact
+	 * @param k						most results to return
+	 * @return ArrayList			best k Results in sorted order
+	 */
+	@Override
+	ArrayList<Result> findTop(Collection<String> queries, boolean exact, int k)
+	{
+		return topResults(findResults(queries, exact), k);
+	}
+
+	/**
+	 * Returns the words a query matches. A partial query can match words
+	 * in every shard, so their words are merged and capped again.
+	 *
+	 * @param query			query to look up
+	 * @param exact			boolean to know whether we are doing exact
+	 * @return List			words the query matches
+	 */
+	@Override
+	List<String> matchingWords(String query, boolean exact)
+	{
+		if (exact)
+		{
+			return shard(query).matchingWords(query, true);
+		}
+
+		TreeSet<String> words = new TreeSet<>();
+
+		for (ThreadSafeInvertedIndex shard : shards)
+		{
+			words.addAll(shard.matchingWords(query, false));
+		}
+
+		return words.stream().limit(getMaxExpansions()).collect(Collectors.toList());
+	}
+
+	@Override
+	void addHits(String word, int[] ids, int[] counts)
+	{
+		for (int i = 0; i < ids.length; i++)
+		{
+			counts[i] += numLocation(word, getLocation(ids[i]));
+		}
+	}
+
+	@Override
+	void scatter(String word, int[] queries, ScoreAccumulator[] matches)
+	{
+		scatterByLocation(word, queries, matches);
+	}
+
+	@Override
+	int frequency(String word)
+	{
+		return getLocations(word).size();
+	}
+
+	@Override
+	int[] documents(String word)
+	{
+		return documentsByLocation(word);
+	}
+
+	@Override
+	int[] positions(String word, int id)
+	{
+		return positionsByLocation(word, id);
+	}
+
+	@Override
+	int wordCount(int id)
+	{
+		return getCount(getLocation(id));
+	}
+
+	@Override
+	public Map<String, Integer> getCount()
+	{
+		TreeMap<String, Integer> combined = new TreeMap<>();
+
+		for (int i = 0; i < counts.size(); i++)
+		{
+			countLocks[i].readLock().lock();
+			try
+			{
+				combined.putAll(counts.get(i));
+			}
+			finally
+			{
+				countLocks[i].readLock().unlock();
+			}
+		}
+
+		return Collections.unmodifiableMap(combined);
+	}
+
+	@Override
+	public Set<String> getLocations()
+	{
+		return getCount().keySet();
+	}
+
+	@Override
+	public int getLocationId(String location)
+	{
+		return locationIds.getOrDefault(location, -1);
+	}
+
+	@Override
+	public String getLocation(int id)
+	{
+		return locations.get(id);
+	}
+
+	@Override
+	public Set<String> getWords()
+	{
+		TreeSet<String> words = new TreeSet<>();
+
+		for (ThreadSafeInvertedIndex shard : shards)
+		{
+			words.addAll(shard.getWords());
+		}
+
+		return Collections.unmodifiableSet(words);
+	}
+
+	@Override
+	public Set<Integer> getPositions(String word, String location)
+	{
+		return shard(word).getPositions(word, location);
+	}
+
+	@Override
+	public int numLocation(String word, String file)
+	{
+		return shard(word).numLocation(word, file);
+	}
+
+	@Override
+	public Set<String> getLocations(String word)
+	{
+		return shard(word).getLocations(word);
+	}
+
+	@Override
+	public void toJson(Path path) throws IOException
+	{
+		freeze().toJson(path);
+	}
+
+	/**
+	 * Creates a snapshot by merging the snapshots of every shard. Each
+	 * shard also counts every location it saw, so the merged word counts
+	 * match the count stripes.
+	 *
+	 * @return FrozenInvertedIndex		snapshot of this index
+	 */
+	@Override
+	public FrozenInvertedIndex freeze()
+	{
+		FrozenInvertedIndex merged = shards[0].freeze();
+
+		for (int i = 1; i < shards.length; i++)
+		{
+			merged = FrozenInvertedIndex.merge(merged, shards[i].freeze());
+		}
+
+		return limited(merged);
+	}
+}
@@ -0,0 +1,187 @@
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import opennlp.tools.stemmer.Stemmer;
+import opennlp.tools.stemmer.snowball.SnowballStemmer;
+
+/**
+ * Thread safe stemmer that remembers the stem of every word it has seen.
+ * The words of natural text follow a Zipf distribution, so most words are
+ * ones seen before and are looked up instead of stemmed. The words that
+ * are not cached are stemmed by a stemmer kept by each thread, since a
+ * {@link SnowballStemmer} cannot be shared between threads.
+ *
+ * The cache holds at most a fixed number of words. Once it is full it is
+ * cleared and refills with the words of the text being read, which keeps
+ * the common words without tracking how often each word is seen. A cache
+ * with no room stems every word.
+ *
+ * @author hayde
+ */
+public class StemCache implements Stemmer
+{
+	/**
+	 * default number of words kept
+	 */
+	public static final int DEFAULT = 1 << 16;
+
+	/**
+	 * cache shared by the builders, the crawler and the queries
+	 */
+	public static final StemCache SHARED = new StemCache(TextFileStemmer.DEFAULT, DEFAULT);
+
+	/**
+	 * stem of each word
+	 */
+	private final ConcurrentHashMap<String, String> stems;
+
+	/**
+	 * stemmer of each thread
+	 */
+	private final ThreadLocal<Stemmer> stemmers;
+
+	/**
+	 * number of words answered from the cache
+	 */
+	private final LongAdder hits;
+
+	/**
+	 * number of words that had to be stemmed
+	 */
+	private final LongAdder misses;
+
+	/**
+	 * most words kept
+	 */
+	private volatile int capacity;
+
+	/**
+	 * Initializes a cache.
+	 *
+	 * @param algorithm		stemming algorithm
+	 * @param capacity		most words kept
+	 */
+	public StemCache(SnowballStemmer.ALGORITHM algorithm, int capacity)
+	{
+		this.stems = new ConcurrentHashMap<>();
+		this.stemmers = ThreadLocal.withInitial(() -> new SnowballStemmer(algorithm));
+		this.hits = new LongAdder();
+		this.misses = new LongAdder();
+		this.capacity = Math.max(capacity, 0);
+	}
+
+	/**
+	 * Returns the stem of a word
+	 *
+	 * @param word				word to stem
+	 * @return CharSequence		stem of the word
+	 */
+	@Override
+	public CharSequence stem(CharSequence word)
+	{
+		String key = word.toString();
+		String stem = stems.get(key);
+
+		if (stem != null)
+		{
+			hits.increment();
+			return stem;
+		}
+
+		misses.increment();
+		stem = stemmers.get().stem(key).toString();
+
+		if (capacity > 0)
+		{
+			if (stems.size() >= capacity)
+			{
+				stems.clear();
+			}
+
+			stems.put(key, stem);
+		}
+
+		return stem;
+	}
+
+	/**
+	 * Changes the most words kept, removing every cached word. A capacity
+	 * of zero turns the cache off.
+	 *
+	 * @param capacity		most words kept
+	 */
+	public void setCapacity(int capacity)
+	{
+		this.capacity = Math.max(capacity, 0);
+		stems.clear();
+	}
+
+	/**
+	 * Returns the most words kept
+	 *
+	 * @return int			most words kept
+	 */
+	public int getCapacity()
+	{
+		return capacity;
+	}
+
+	/**
+	 * Returns the number of words answered from the cache
+	 *
+	 * @return long			number of hits
+	 */
+	public long getHits()
+	{
+		return hits.sum();
+	}
+
+	/**
+	 * Returns the number of words that had to be stemmed
+	 *
+	 * @return long			number of misses
+	 */
+	public long getMisses()
+	{
+		return misses.sum();
+	}
+
+	/**
+	 * Returns the share of words answered from the cache
+	 *
+	 * @return double		hit rate between 0 and 1
+	 */
+	public double getHitRate()
+	{
+		long found = getHits();
+		long total = found + getMisses();
+		return total == 0 ? 0.0 : (double) found / total;
+	}
+
+	/**
+	 * Returns the number of words cached
+	 *
+	 * @return int			number of words
+	 */
+	public int size()
+	{
+		return stems.size();
+	}
+
+	/**
+	 * Removes every cached word and resets the counts
+	 */
+	public void clear()
+	{
+		stems.clear();
+		hits.reset();
+		misses.reset();
+	}
+
+	@Override
+	public String toString()
+	{
+		return String.format("%d hits, %d misses (%.1f%% hit rate), %d stems cached", getHits(), getMisses(),
+				100.0 * getHitRate(), size());
+	}
+}
@@ -22,12 +22,11 @@ public class TextFileStemmer {
 	 * @param line    the line of words to clean, split, and stem
 	 * @return array of parsed strings 
 	 *
-	 * @see SnowballStemmer
-	 * @see #DEFAULT
+	 * @see StemCache#SHARED
 	 * @see #stems(String, Stemmer)
 	 */
 	public static TreeSet<String> stems(String line) { 
-		return stems(line, new SnowballStemmer(DEFAULT));
+		return stems(line, StemCache.SHARED);
 	}
 
 	/**
@@ -40,23 +39,15 @@ public class TextFileStemmer {
 	 * 
 	 *
 	 * @see Stemmer#stem(CharSequence)
-	 * @see TextParser#parse(String)
+	 * @see Tokenizer
 	 */
 	public static TreeSet<String> stems(String line, Stemmer stemmer) {
 
-		String []temp = TextParser.parse(line);
+		Tokenizer tokenizer = new Tokenizer().reset(line);
 		TreeSet<String> list = new TreeSet<String>();
-		for (int i = 0; i < temp.length; i++)
+		while (tokenizer.next())
 		{
-
-			temp[i] = stemmer.stem(temp[i]).toString();
-
-			String t = (String) stemmer.stem(temp[i]);
-			if (!list.contains(t))
-			{
-				list.add(t);
-			}
-
+			list.add(stemmer.stem(tokenizer.token()).toString());
 		}
 
 		return list;
@@ -1,4 +1,5 @@
 import java.text.Normalizer;
+import java.util.ArrayList;
 import java.util.regex.Pattern;
 
 /**
@@ -41,16 +42,27 @@ public class TextParser {
 	}
 
 	/**
-	 * Cleans the text and then splits it by whitespace.
+	 * Cleans the text and then splits it by whitespace. This is done in 
+	 * one pass by a {@link Tokenizer}, which gives the same words as 
+	 * cleaning and splitting the text. 
 	 *
 	 * @param text the text to clean and split
 	 * @return an array of {@link String} objects
 	 *
 	 * @see #clean(String)
-	 * @see #parse(String)
+	 * @see #split(String)
+	 * @see Tokenizer
 	 */
 	public static String[] parse(String text) {
-		return split(clean(text));
+		ArrayList<String> words = new ArrayList<>();
+		Tokenizer tokenizer = new Tokenizer().reset(text);
+		
+		while (tokenizer.next())
+		{
+			words.add(tokenizer.token().toString());
+		}
+		
+		return words.toArray(new String[0]);
 	}
 	
 }
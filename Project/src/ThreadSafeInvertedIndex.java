@@ -2,8 +2,10 @@ import java.io.IOException;
 import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.function.Predicate;
 
 /**
  * A thread-safe version of {@link InvertedIndex} using a read/write lock.
@@ -24,6 +26,47 @@ public class ThreadSafeInvertedIndex extends InvertedIndex {
 		lock = new ReadWriteLock();
 	}
 
+	/**
+	 * Adds every word of a document while holding the write lock once. 
+	 * 
+	 * @param location				location of the document
+	 * @param words					positions of each word in the document
+	 * @param length				word count of the document
+	 */
+	@Override
+	public void addDocument(String location, Map<String, PositionList> words, int length)
+	{
+		lock.writeLock().lock();
+		try
+		{
+			super.addDocument(location, words, length);
+		}
+		finally
+		{
+			lock.writeLock().unlock();
+		}
+	}
+	
+	/**
+	 * Passes every posting of the index to the consumer while holding 
+	 * the read lock. 
+	 * 
+	 * @param consumer				consumer of each word, location and positions
+	 */
+	@Override
+	public void forEachPosting(PostingConsumer consumer)
+	{
+		lock.readLock().lock();
+		try
+		{
+			super.forEachPosting(consumer);
+		}
+		finally
+		{
+			lock.readLock().unlock();
+		}
+	}
+	
 	/**
 	 * Getter method to return the jsonCount object 
 	 * in a safe way where main cant access our data 
@@ -60,6 +103,47 @@ public class ThreadSafeInvertedIndex extends InvertedIndex {
 		}
 	}
 	
+	/**
+	 * Returns the document id of a location or -1 if the 
+	 * location is not in the index. 
+	 * 
+	 * @param location				location to look up
+	 * @return id					document id or -1
+	 */
+	@Override
+	public int getLocationId(String location)
+	{
+		lock.readLock().lock();
+		try
+		{
+			return super.getLocationId(location);
+		}
+		finally
+		{
+			lock.readLock().unlock();
+		}
+	}
+	
+	/**
+	 * Returns the location of a document id. 
+	 * 
+	 * @param id					document id to look up
+	 * @return location				location the id was assigned to
+	 */
+	@Override
+	public String getLocation(int id)
+	{
+		lock.readLock().lock();
+		try
+		{
+			return super.getLocation(id);
+		}
+		finally
+		{
+			lock.readLock().unlock();
+		}
+	}
+	
 	/**
 	 * Returns key set of index object.
 	 * @return Set<string> 		returns keyset of index object 
@@ -122,18 +206,152 @@ public class ThreadSafeInvertedIndex extends InvertedIndex {
 	}
 	
 	/**
-	 * Returns number of partial hits given query word and file. 
+	 * Finds the results of the queries while holding the read lock. 
+	 * Both the sorted and the top results searches go through here. 
+	 * 
+	 * @param queries				queries used to search
+	 * @param exact					boolean to know whether we are doing exact
+	 * @return ArrayList<Result>	Returns unsorted arraylist of results
+	 */
+	@Override
+	ArrayList<Result> findResults(Collection<String> queries, boolean exact) 
+	{
+		lock.readLock().lock();
+		try
+		{
+			return super.findResults(queries, exact);
+		}
+		finally
+		{
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Finds the best results of the queries while holding the read lock. 
 	 * 
-	 * @param queries				Words to be searched
-	 * @return ArrayList			ArrayList of words to be searched 
+	 * @param queries				queries used to search
+	 * @param exact					boolean to know whether we are doing exact
+	 * @param k						most results to return
+	 * @return ArrayList<Result>	Returns sorted arraylist of the best results
 	 */
 	@Override
-	public ArrayList<Result> partialSearch(Collection<String> queries)
+	ArrayList<Result> findTop(Collection<String> queries, boolean exact, int k) 
 	{
 		lock.readLock().lock();
 		try
 		{
-			return super.partialSearch(queries);
+			return super.findTop(queries, exact, k);
+		}
+		finally
+		{
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Finds the locations matching every query while holding the read 
+	 * lock, so the documents and hits it reads come from the same state. 
+	 * 
+	 * @param queries				queries that all have to match
+	 * @param exact					boolean to know whether we are doing exact
+	 * @return ArrayList<Result>	Returns unsorted arraylist of results
+	 */
+	@Override
+	ArrayList<Result> findConjunctive(Collection<String> queries, boolean exact) 
+	{
+		lock.readLock().lock();
+		try
+		{
+			return super.findConjunctive(queries, exact);
+		}
+		finally
+		{
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Finds the results of a batch of queries while holding the read 
+	 * lock, so every query of the batch sees the same state. 
+	 * 
+	 * @param queries				queries used to search
+	 * @param exact					boolean to know whether we are doing exact
+	 * @return List					unsorted results of each query
+	 */
+	@Override
+	List<ArrayList<Result>> findBatch(List<? extends Collection<String>> queries, boolean exact) 
+	{
+		lock.readLock().lock();
+		try
+		{
+			return super.findBatch(queries, exact);
+		}
+		finally
+		{
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Plans a search while holding the read lock, so the words and 
+	 * postings of every term are counted from the same state. 
+	 * 
+	 * @param queries				queries used to search
+	 * @param exact					boolean to know whether we are doing exact
+	 * @return QueryPlan			plan of the search
+	 */
+	@Override
+	public QueryPlan plan(Collection<String> queries, boolean exact) 
+	{
+		lock.readLock().lock();
+		try
+		{
+			return super.plan(queries, exact);
+		}
+		finally
+		{
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Returns the words a query matches while holding the read lock. 
+	 * Read locks can be held more than once, so this is also safe to 
+	 * call from a search that already holds one. 
+	 * 
+	 * @param query					query to look up
+	 * @param exact					boolean to know whether we are doing exact
+	 * @return List<String>			words the query matches
+	 */
+	@Override
+	List<String> matchingWords(String query, boolean exact) 
+	{
+		lock.readLock().lock();
+		try
+		{
+			return super.matchingWords(query, exact);
+		}
+		finally
+		{
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Finds the results of a proximity query while holding the read lock, 
+	 * so the documents and positions it reads come from the same state. 
+	 * 
+	 * @param query					phrase or NEAR query to search for
+	 * @return ArrayList<Result>	Returns unsorted arraylist of results
+	 */
+	@Override
+	ArrayList<Result> findProximity(ProximityQuery query) 
+	{
+		lock.readLock().lock();
+		try
+		{
+			return super.findProximity(query);
 		}
 		finally
 		{
@@ -142,18 +360,20 @@ public class ThreadSafeInvertedIndex extends InvertedIndex {
 	}
 	
 	/**
-	 * Performs an exact search given the collection of queries. 
+	 * Adds up the number of matches of the queries at each location 
+	 * while holding the read lock. 
 	 * 
 	 * @param queries				queries used to search
-	 * @return ArrayList<Result>	Returns arraylist of results
+	 * @param exact					boolean to know whether we are doing exact
+	 * @param matches				map of location to matches that is added to
 	 */
 	@Override
-	public ArrayList<Result> exactSearch(Collection<String> queries) 
+	public void countMatches(Collection<String> queries, boolean exact, Map<String, Integer> matches)
 	{
 		lock.readLock().lock();
 		try
 		{
-			return super.exactSearch(queries);
+			super.countMatches(queries, exact, matches);
 		}
 		finally
 		{
@@ -182,6 +402,26 @@ public class ThreadSafeInvertedIndex extends InvertedIndex {
 		}
 	}
 	
+	/**
+	 * Creates a read-only snapshot of the index while holding the read lock. 
+	 * The snapshot itself needs no locking. 
+	 * 
+	 * @return FrozenInvertedIndex		snapshot of this index
+	 */
+	@Override
+	public FrozenInvertedIndex freeze()
+	{
+		lock.readLock().lock();
+		try
+		{
+			return super.freeze();
+		}
+		finally
+		{
+			lock.readLock().unlock();
+		}
+	}
+	
 	/**
 	 * public class to addIndex one at a time. 
 	 * Called by addAll, inserts word in to index,
@@ -225,4 +465,25 @@ public class ThreadSafeInvertedIndex extends InvertedIndex {
 			lock.writeLock().unlock();
 		}
 	}
+	
+	/**
+	 * Method to merge some words of a local index to main index in a 
+	 * threadsafe manner
+	 * 
+	 * @param index				index to be merged in to main
+	 * @param words				which of the words to add
+	 */
+	@Override
+	public void addAll(InvertedIndex index, Predicate<String> words)
+	{
+		lock.writeLock().lock();
+		try
+		{
+			super.addAll(index, words);
+		}
+		finally
+		{
+			lock.writeLock().unlock();
+		}
+	}
 }
@@ -1,43 +1,63 @@
+import java.io.BufferedReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.TreeMap;
 import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.Supplier;
 
 /**
- * A thread safe QueryParser
+ * A thread safe QueryParser. Each query is searched once, no matter how 
+ * many lines stem to it. The first task to reach a query registers a 
+ * future for its results and searches, every later task with the same 
+ * query finds the future and skips the search. 
  * 
  * @author hayden
  */
 public class ThreadSafeQuery implements QueryInterface
 {
+	/**
+	 * most searches that run ahead of the one being written when streaming 
+	 */
+	public static final int AHEAD = 64;
+	
 	/**
 	 * private final WorkQue passed in by constructor 
 	 */
 	private final WorkQueue que;
 	
 	/**
-	 * private final ThreadSafe Index 
+	 * private final index that is safe to search from several threads
 	 */
-	private final ThreadSafeInvertedIndex index;
+	private final InvertedIndex index;
 	
 	/**
-	 * private query Object that stores our query results. 
+	 * private query Object that stores the results of each normalized 
+	 * query, complete once its search is done 
 	 */
-	private final TreeMap<String, ArrayList<InvertedIndex.Result>> query;
+	private final ConcurrentHashMap<String, CompletableFuture<ArrayList<InvertedIndex.Result>>> query;
 	
 	/**
 	 * Constructor for this class that sets index and workQue
 	 * 
-	 * @param index 			index object 
+	 * @param index 			thread safe or frozen index object 
 	 * @param que				que 
 	 */
-	public ThreadSafeQuery(ThreadSafeInvertedIndex index, WorkQueue que) 
+	public ThreadSafeQuery(InvertedIndex index, WorkQueue que) 
 	{
 		this.que = que;
 		this.index = index;
-		query = new TreeMap<>();
+		query = new ConcurrentHashMap<>();
 		
 	}
 	
@@ -49,7 +69,14 @@ public class ThreadSafeQuery implements QueryInterface
 	@Override
 	public void writeQueryJson(Path path) throws Exception
 	{
-		JsonWriter.queryJson(path, query);
+		TreeMap<String, ArrayList<InvertedIndex.Result>> sorted = new TreeMap<>();
+		
+		for (Map.Entry<String, CompletableFuture<ArrayList<InvertedIndex.Result>>> entry : query.entrySet())
+		{
+			sorted.put(entry.getKey(), entry.getValue().join());
+		}
+		
+		JsonWriter.queryJson(path, sorted);
 	}
 	
 	/**
@@ -57,14 +84,253 @@ public class ThreadSafeQuery implements QueryInterface
 	 * 
 	 * @param path				path to search
 	 * @param exact 			know whether we exact
+	 * @param all				whether every word of a line has to match
 	 */
 	@Override 
-	public void query(Path path, boolean exact) throws Exception
+	public void query(Path path, boolean exact, boolean all) throws Exception
+	{
+		QueryInterface.super.query(path, exact, all);
+		que.finish();
+	}
+	
+	/**
+	 * Searches a query file and writes the results as they are found, 
+	 * instead of keeping every result until the end. The lines are 
+	 * normalized first, so the sorted order of the output is known before 
+	 * any search runs. The searches then run in that order, at most 
+	 * {@link #AHEAD} ahead of the query being written, and each query is 
+	 * written and released as soon as every query before it is. The output 
+	 * is the same as {@link #writeQueryJson(Path)} after 
+	 * {@link #query(Path, boolean, boolean)}, but the results are not kept. 
+	 * 
+	 * @param path				path of the queries
+	 * @param output			path to write the results to
+	 * @param exact 			know whether we exact
+	 * @param all				whether every word of a line has to match
+	 * @throws Exception
+	 */
+	public void streamQueryJson(Path path, Path output, boolean exact, boolean all) throws Exception
+	{
+		ConcurrentSkipListMap<String, Supplier<ArrayList<InvertedIndex.Result>>> searches = new ConcurrentSkipListMap<>();
+		
+		try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8))
+		{
+			String raw;
+			
+			while ((raw = reader.readLine()) != null)
+			{
+				String line = raw;
+				
+				que.execute(() -> 
+				{
+					Map.Entry<String, Supplier<ArrayList<InvertedIndex.Result>>> search = normalize(line, exact, all);
+					
+					if (search != null)
+					{
+						searches.putIfAbsent(search.getKey(), search.getValue());
+					}
+				});
+			}
+		}
+		
+		que.finish();
+		JsonWriter.queryJson(output, new Ordered(searches));
+	}
+	
+	/**
+	 * Searches a query file in batches. The lines are normalized first, 
+	 * the lines that match any of their words are collected and the rest 
+	 * are searched right away. The collected queries are then split in to 
+	 * batches of {@link InvertedIndex#BATCH} in sorted order, so queries 
+	 * that start with the same words share a batch, and each batch is 
+	 * searched by one task with {@link InvertedIndex#batchSearch(List, boolean)}. 
+	 * 
+	 * @param path				path to query
+	 * @param exact 			know whether we exact
+	 * @param all				whether every word of a line has to match
+	 */
+	@Override
+	public void batchQuery(Path path, boolean exact, boolean all) throws Exception
 	{
-		QueryInterface.super.query(path, exact);
+		ConcurrentSkipListMap<String, TreeSet<String>> batch = new ConcurrentSkipListMap<>();
+		
+		try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8))
+		{
+			String raw;
+			
+			while ((raw = reader.readLine()) != null)
+			{
+				String line = raw;
+				
+				que.execute(() -> 
+				{
+					if (all || AND.matcher(line).find() || ProximityQuery.parse(line) != null)
+					{
+						new Task(line, exact, all).run();
+						return;
+					}
+					
+					TreeSet<String> stems = TextFileStemmer.stems(line);
+					
+					if (!stems.isEmpty())
+					{
+						batch.putIfAbsent(String.join(" ", stems), stems);
+					}
+				});
+			}
+		}
+		
+		que.finish();
+		
+		ArrayList<TreeSet<String>> queries = new ArrayList<>();
+		ArrayList<CompletableFuture<ArrayList<InvertedIndex.Result>>> futures = new ArrayList<>();
+		
+		for (Map.Entry<String, TreeSet<String>> entry : batch.entrySet())
+		{
+			CompletableFuture<ArrayList<InvertedIndex.Result>> results = new CompletableFuture<>();
+			
+			if (query.putIfAbsent(entry.getKey(), results) == null)
+			{
+				queries.add(entry.getValue());
+				futures.add(results);
+			}
+		}
+		
+		for (int start = 0; start < queries.size(); start += InvertedIndex.BATCH)
+		{
+			int end = Math.min(start + InvertedIndex.BATCH, queries.size());
+			List<TreeSet<String>> searches = queries.subList(start, end);
+			List<CompletableFuture<ArrayList<InvertedIndex.Result>>> results = futures.subList(start, end);
+			
+			que.execute(() -> 
+			{
+				try
+				{
+					List<ArrayList<InvertedIndex.Result>> found = index.batchSearch(searches, exact);
+					
+					for (int i = 0; i < found.size(); i++)
+					{
+						results.get(i).complete(found.get(i));
+					}
+				}
+				catch (RuntimeException e)
+				{
+					results.forEach(result -> result.completeExceptionally(e));
+					throw e;
+				}
+			});
+		}
+		
 		que.finish();
 	}
 	
+	/**
+	 * Returns the normalized form of a line along with its search, or null 
+	 * if the line has no words. The normalized form is the joined stems, 
+	 * with AND between them for a conjunctive query, or the stemmed 
+	 * proximity query. 
+	 * 
+	 * @param line				line to normalize
+	 * @param exact				boolean to know whether we do exact search
+	 * @param all				boolean to know whether every word has to match
+	 * @return Map.Entry		normalized query and its search or null
+	 */
+	private Map.Entry<String, Supplier<ArrayList<InvertedIndex.Result>>> normalize(String line, boolean exact, boolean all)
+	{
+		ProximityQuery proximity = ProximityQuery.parse(line);
+		
+		if (proximity != null)
+		{
+			return Map.entry(proximity.toString(), () -> index.proximitySearch(proximity));
+		}
+		
+		boolean conjunctive = all || AND.matcher(line).find();
+		TreeSet<String> cleanQuery = TextFileStemmer.stems(AND.matcher(line).replaceAll(" "));
+		
+		if (cleanQuery.isEmpty())
+		{
+			return null;
+		}
+		
+		String joined = String.join(conjunctive ? " AND " : " ", cleanQuery);
+		return Map.entry(joined, () -> conjunctive ? index.conjunctiveSearch(cleanQuery, exact) : index.search(cleanQuery, exact));
+	}
+	
+	/**
+	 * Iterates over the results of the normalized queries in sorted order 
+	 * while keeping a few searches running ahead on the work queue. 
+	 */
+	private class Ordered implements Iterator<Map.Entry<String, ArrayList<InvertedIndex.Result>>>
+	{
+		/**
+		 * searches that have not started, in sorted order 
+		 */
+		private final Iterator<Map.Entry<String, Supplier<ArrayList<InvertedIndex.Result>>>> waiting;
+		
+		/**
+		 * searches that have started, in sorted order 
+		 */
+		private final ArrayDeque<Map.Entry<String, CompletableFuture<ArrayList<InvertedIndex.Result>>>> running;
+		
+		/**
+		 * Constructor that starts the first searches 
+		 * 
+		 * @param searches			search of each normalized query
+		 */
+		public Ordered(ConcurrentSkipListMap<String, Supplier<ArrayList<InvertedIndex.Result>>> searches)
+		{
+			this.waiting = searches.entrySet().iterator();
+			this.running = new ArrayDeque<>();
+			start();
+		}
+		
+		/**
+		 * Starts searches until {@link #AHEAD} are running 
+		 */
+		private void start()
+		{
+			while (running.size() < AHEAD && waiting.hasNext())
+			{
+				Map.Entry<String, Supplier<ArrayList<InvertedIndex.Result>>> search = waiting.next();
+				CompletableFuture<ArrayList<InvertedIndex.Result>> results = new CompletableFuture<>();
+				
+				que.execute(() -> 
+				{
+					try
+					{
+						results.complete(search.getValue().get());
+					}
+					catch (RuntimeException e)
+					{
+						results.completeExceptionally(e);
+					}
+				});
+				
+				running.add(Map.entry(search.getKey(), results));
+				waiting.remove();
+			}
+		}
+		
+		@Override
+		public boolean hasNext()
+		{
+			return !running.isEmpty();
+		}
+		
+		/**
+		 * Waits for the next query in sorted order and starts another 
+		 * search in its place 
+		 */
+		@Override
+		public Map.Entry<String, ArrayList<InvertedIndex.Result>> next()
+		{
+			Map.Entry<String, CompletableFuture<ArrayList<InvertedIndex.Result>>> next = running.remove();
+			ArrayList<InvertedIndex.Result> results = next.getValue().join();
+			start();
+			return Map.entry(next.getKey(), results);
+		}
+	}
+	
 	/**
 	 * Does the work of the queryparser with multithreading!!!
 	 * @author hayde
@@ -83,16 +349,23 @@ public class ThreadSafeQuery implements QueryInterface
 		 */
 		private final boolean exact; 
 		
+		/**
+		 * boolean to know whether every word has to match 
+		 */
+		private final boolean all; 
+		
 		/**
 		 * Constructor for this class
 		 * 
 		 * @param query				query to set local
 		 * @param exact				boolean to know whether we do exact search
+		 * @param all				boolean to know whether every word has to match
 		 */
-		public Task(String query, boolean exact)
+		public Task(String query, boolean exact, boolean all)
 		{
 			this.local = query;
 			this.exact = exact;
+			this.all = all;
 		}
 		
 		/**
@@ -101,26 +374,39 @@ public class ThreadSafeQuery implements QueryInterface
 		@Override
 		public void run()
 		{
-			TreeSet<String> cleanQuery = TextFileStemmer.stems(local);
+			Map.Entry<String, Supplier<ArrayList<InvertedIndex.Result>>> search = normalize(local, exact, all);
 			
-			if(!cleanQuery.isEmpty())
+			if (search != null)
 			{
-				String joined = String.join(" ", cleanQuery);
-				
-				synchronized (query)
-				{
-					if (query.containsKey(local))
-					{
-						return;
-					}	
-				}
-				
-				ArrayList<InvertedIndex.Result> results = index.search(cleanQuery, exact);
-				
-				synchronized (query)
-				{
-					query.put(joined, results);
-				}
+				searchOnce(search.getKey(), search.getValue());
+			}
+		}
+		
+		/**
+		 * Searches a normalized query unless another task already has. 
+		 * A duplicate does not wait for the search in flight, the results 
+		 * are written from the future the first task completes. 
+		 * 
+		 * @param joined			normalized query
+		 * @param search			search of the query
+		 */
+		private void searchOnce(String joined, Supplier<ArrayList<InvertedIndex.Result>> search)
+		{
+			CompletableFuture<ArrayList<InvertedIndex.Result>> results = new CompletableFuture<>();
+			
+			if (query.putIfAbsent(joined, results) != null)
+			{
+				return;
+			}
+			
+			try
+			{
+				results.complete(search.get());
+			}
+			catch (RuntimeException e)
+			{
+				results.completeExceptionally(e);
+				throw e;
 			}
 		}
 	}
@@ -130,10 +416,11 @@ public class ThreadSafeQuery implements QueryInterface
 	 * 
 	 * @param line				line to parse
 	 * @param exact				bool to know whtether we search with exact
+	 * @param all				bool to know whether every word has to match
 	 */
 	@Override
-	public void parseLine(String line, boolean exact) {
-		que.execute(new Task(line, exact));
+	public void parseLine(String line, boolean exact, boolean all) {
+		que.execute(new Task(line, exact, all));
 	}
 
 	/**
@@ -142,7 +429,7 @@ public class ThreadSafeQuery implements QueryInterface
 	 */
 	@Override
 	public Set<String> getResultsKeys() {
-		return Collections.unmodifiableSet(query.keySet());
+		return Collections.unmodifiableSet(new TreeSet<>(query.keySet()));
 	}
 
 }
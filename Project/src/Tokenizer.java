@@ -0,0 +1,232 @@
+import java.util.Locale;
+
+/**
+ * Splits text in to the same cleaned words as {@link TextParser#parse(String)}
+ * in a single pass over the characters, without making a cleaned copy of
+ * the text or a string for every word. Each word is written in to a buffer
+ * that is reused for the next word, so a word is only valid until
+ * {@link #next()} is called again.
+ *
+ * Whitespace is matched like the Unicode {@code \p{Space}} class of the
+ * parser. Characters below {@link #TABLE_SIZE}, which covers ASCII and most
+ * accented Latin letters, are cleaned with a table made by cleaning each
+ * character on its own, so the diacritical marks are removed the same way.
+ * A word with any other character is cleaned by the parser itself. The
+ * one letter whose lowercase depends on the words around it, the Greek
+ * capital sigma, makes the rest of the text come from the parser.
+ *
+ * Like the parser, a word with no letters left after cleaning is skipped,
+ * and text that starts with a non-breaking space gives an empty first word.
+ *
+ * @author hayde
+ */
+public class Tokenizer
+{
+	/**
+	 * characters below this are cleaned with the table
+	 */
+	public static final int TABLE_SIZE = 0x250;
+
+	/**
+	 * cleaned form of each character below {@link #TABLE_SIZE}
+	 */
+	private static final String[] TABLE = new String[TABLE_SIZE];
+
+	/**
+	 * whether lowercasing a letter does not depend on the letters around it
+	 * in the default locale, which is not true for Turkish, Azeri and
+	 * Lithuanian
+	 */
+	static final boolean SIMPLE_CASE;
+
+	static
+	{
+		for (int c = 0; c < TABLE_SIZE; c++)
+		{
+			TABLE[c] = TextParser.clean(String.valueOf((char) c));
+		}
+
+		String language = Locale.getDefault().getLanguage();
+		SIMPLE_CASE = !language.equals("tr") && !language.equals("az") && !language.equals("lt");
+	}
+
+	/**
+	 * the current word
+	 */
+	private final StringBuilder token;
+
+	/**
+	 * text being split
+	 */
+	private CharSequence text;
+
+	/**
+	 * index of the next character to read
+	 */
+	private int position;
+
+	/**
+	 * number of words returned
+	 */
+	private int count;
+
+	/**
+	 * whether a non-breaking space was read before the first word
+	 */
+	private boolean leading;
+
+	/**
+	 * words of the text when the locale needs the parser, otherwise null
+	 */
+	private String[] words;
+
+	/**
+	 * Initializes a tokenizer with no text
+	 */
+	public Tokenizer()
+	{
+		this.token = new StringBuilder();
+		reset("");
+	}
+
+	/**
+	 * Starts splitting new text
+	 *
+	 * @param text				text to split
+	 * @return Tokenizer		this tokenizer
+	 */
+	public Tokenizer reset(CharSequence text)
+	{
+		this.text = text;
+		this.position = 0;
+		this.count = 0;
+		this.leading = false;
+		this.words = SIMPLE_CASE ? null : TextParser.split(TextParser.clean(text.toString()));
+		return this;
+	}
+
+	/**
+	 * Moves to the next word of the text
+	 *
+	 * @return boolean			whether there is another word
+	 */
+	public boolean next()
+	{
+		token.setLength(0);
+
+		if (words != null)
+		{
+			if (position == words.length)
+			{
+				return false;
+			}
+
+			token.append(words[position++]);
+			count++;
+			return true;
+		}
+
+		int length = text.length();
+
+		while (position < length)
+		{
+			int start = position;
+			boolean simple = true;
+
+			for (; position < length; position++)
+			{
+				char c = text.charAt(position);
+
+				if (isSpace(c))
+				{
+					break;
+				}
+
+				if (c >= TABLE_SIZE)
+				{
+					simple = false;
+				}
+				else if (simple)
+				{
+					if (c >= 'a' && c <= 'z')
+					{
+						token.append(c);
+					}
+					else if (c >= 'A' && c <= 'Z')
+					{
+						token.append((char) (c + ('a' - 'A')));
+					}
+					else if (c >= 0x80)
+					{
+						token.append(TABLE[c]);
+					}
+				}
+			}
+
+			if (!simple)
+			{
+				String word = text.subSequence(start, position).toString();
+
+				if (word.indexOf('\u03A3') >= 0)
+				{
+					// a final sigma is found from the word boundaries of the whole text 
+					words = TextParser.split(TextParser.clean(text.toString()));
+					position = count;
+					return next();
+				}
+
+				token.setLength(0);
+				token.append(TextParser.clean(word));
+			}
+
+			if (token.length() > 0)
+			{
+				if (count == 0 && leading)
+				{
+					// the parser splits off an empty word before the space strip() keeps
+					position = start;
+					token.setLength(0);
+				}
+
+				count++;
+				return true;
+			}
+
+			if (position < length)
+			{
+				char space = text.charAt(position++);
+				leading |= !Character.isWhitespace(space);
+			}
+		}
+
+		return false;
+	}
+
+	/**
+	 * Returns the current word, which changes when {@link #next()} is called
+	 *
+	 * @return CharSequence		the current word
+	 */
+	public CharSequence token()
+	{
+		return token;
+	}
+
+	/**
+	 * Returns whether a character is whitespace, the same characters as
+	 * the Unicode {@code \p{Space}} class
+	 *
+	 * @param c					character to check
+	 * @return boolean			whether the character is whitespace
+	 */
+	public static boolean isSpace(char c)
+	{
+		if (c < 0x80)
+		{
+			return c == ' ' || (c >= 0x9 && c <= 0xd);
+		}
+
+		int separators = (1 << Character.SPACE_SEPARATOR) | (1 << Character.LINE_SEPARATOR) | (1 << Character.PARAGRAPH_SEPARATOR);
+		return c == 0x85 || ((separators >> Character.getType(c)) & 1) != 0;
+	}
+}
@@ -1,9 +1,9 @@
 import java.net.URL;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Set;
 
 import opennlp.tools.stemmer.Stemmer;
-import opennlp.tools.stemmer.snowball.SnowballStemmer;
 
 /**
  * Class that will use multithreading to crawl 
@@ -29,9 +29,9 @@ public class WebCrawler {
 	private final Set<String> URLs;
 	
 	/**
-	 * private index used by this class and others
+	 * private thread safe index used by this class and others
 	 */
-	private final ThreadSafeInvertedIndex index; 
+	private final InvertedIndex index; 
 	
 	/**
 	 * Constructor for WebCrawler class
@@ -39,7 +39,7 @@ public class WebCrawler {
 	 * @param index
 	 * @param work 
 	 */
-	public WebCrawler(ThreadSafeInvertedIndex index, WorkQueue work)
+	public WebCrawler(InvertedIndex index, WorkQueue work)
 	{
 		this.que = work;
 		this.URLs = new HashSet<>();
@@ -80,11 +80,6 @@ public class WebCrawler {
 		 */
 		private final URL crawlURL;
 		
-		/**
-		 * local index to be added to
-		 */
-		private InvertedIndex local;
-		
 		/**
 		 * private number of pages to crawl 
 		 */
@@ -100,11 +95,10 @@ public class WebCrawler {
 		{
 			this.crawlURL = url;
 			this.limit = limit;
-			local = new ThreadSafeInvertedIndex();
 		}
 		/**
-		 * method will fetch html and add to local index 
-		 * then merge with master, then will begin to crawl 
+		 * method will fetch html and add the page to the index 
+		 * at once, then will begin to crawl 
 		 * further and keep going 
 		 */
 		@Override
@@ -120,15 +114,18 @@ public class WebCrawler {
 				}
 				else
 				{
-					Stemmer stemmer = new SnowballStemmer(SnowballStemmer.ALGORITHM.ENGLISH);
-					int count = 1;
+					Stemmer stemmer = StemCache.SHARED;
+					HashMap<String, PositionList> words = new HashMap<>();
+					int count = 0;
+					Tokenizer tokenizer = new Tokenizer().reset(HtmlCleaner.stripHtml(html));
 					
-					for (String word : TextParser.parse(HtmlCleaner.stripHtml(html)))
+					while (tokenizer.next())
 					{
-						local.addIndex(stemmer.stem(word).toString().toLowerCase(), crawlURL.toString(), count++);
+						count++;
+						words.computeIfAbsent(stemmer.stem(tokenizer.token()).toString().toLowerCase(), stem -> new PositionList()).add(count);
 					}
 					
-					index.addAll(local);
+					index.addDocument(crawlURL.toString(), words, count);
 					
 					for (URL link : LinkParser.listLinks(crawlURL, html))
 					{
@@ -44,6 +44,7 @@ public class WebServer {
 	{
 		Server server = new Server(PORT);
 		projectServlet.index = index;
+		projectServlet.cache = new ResultCache(index);
 		ServletContextHandler context1 = new ServletContextHandler();
 		context1.setContextPath("/");
 
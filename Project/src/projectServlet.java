@@ -1,7 +1,7 @@
 import java.io.IOException;
 import java.io.PrintWriter;
-import java.util.ArrayList;
 import java.util.Calendar;
+import java.util.List;
 import java.util.Locale;
 import java.util.TreeSet;
 
@@ -23,10 +23,18 @@ public class projectServlet extends HttpServlet{
 	 * private serialVersionUID var
 	 */
 	private static final long serialVersionUID = 1L;
+	/**
+	 * most results shown for a search 
+	 */
+	public static final int MAX_RESULTS = 50;
 	/**
 	 * private index variable used for this class 
 	 */
 	public static InvertedIndex index;
+	/**
+	 * cache of the results of popular queries 
+	 */
+	public static ResultCache cache;
 	
 	/**
 	 * returns a string of the current day of week
@@ -94,13 +102,36 @@ public class projectServlet extends HttpServlet{
 		String type = request.getParameter("type");
 
 		query = query == null ? "" : query;
+		// quotes are escaped below, so phrases are found first
+		ProximityQuery proximity = ProximityQuery.parse(query);
 		// avoid XSS attacks
 		query = StringEscapeUtils.escapeHtml4(query);
 		
-		TreeSet<String> clean = TextFileStemmer.stems(query);
+		// only the first page is shown, so only the best results are sorted 
+		List<InvertedIndex.Result> results;
 		
-		ArrayList<InvertedIndex.Result> results = (type.equals("partial")) ? index.partialSearch(clean) 
-				: index.exactSearch(clean);
+		if (proximity != null)
+		{
+			String key = ResultCache.key("proximity", List.of(proximity.toString()));
+			results = cache.get(key, () -> index.proximitySearch(proximity, MAX_RESULTS));
+		}
+		else
+		{
+			// every word has to match if asked for or joined with AND
+			boolean all = request.getParameter("all") != null || QueryInterface.AND.matcher(query).find();
+			boolean exact = !type.equals("partial");
+			TreeSet<String> clean = TextFileStemmer.stems(QueryInterface.AND.matcher(query).replaceAll(" "));
+			String key = ResultCache.key((all ? "all " : "") + (exact ? "exact" : "partial"), clean);
+			
+			if (all)
+			{
+				results = cache.get(key, () -> index.conjunctiveSearch(clean, exact, MAX_RESULTS));
+			}
+			else
+			{
+				results = cache.get(key, () -> index.search(clean, exact, MAX_RESULTS));
+			}
+		}
 		
 		PrintWriter out = response.getWriter();
 		out.printf("<html>%n%n");
@@ -143,6 +174,7 @@ public class projectServlet extends HttpServlet{
 		// partial or exact search - extra features 
 		out.printf("<input type=\"radio\" name=\"type\" value=\"partial\" checked> Partial Search<br>");
 		out.printf("<input type=\"radio\" name=\"type\" value=\"exact\" checked> Exact Search<br>");
+		out.printf("<input type=\"checkbox\" name=\"all\" value=\"all\"> Match All Words<br>");
 		out.printf("<p>Query:</p>%n");
 		out.printf("<input type=\"text\" name=\"query\">%n");
 		out.printf("<input class= \"button **is-large is-success is-rounded**\" type=\"submit\" value=\"Search\">%n");
@@ -0,0 +1,93 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks that ranking with {@link Bm25} gives the same best results with
+ * the WAND pruning of a top k search as scoring every posting.
+ *
+ * @author hayde
+ */
+public class Bm25Test
+{
+	/**
+	 * Builds a random frozen index that ranks with BM25
+	 *
+	 * @return FrozenInvertedIndex		the index
+	 */
+	private static FrozenInvertedIndex randomIndex()
+	{
+		InvertedIndex index = new InvertedIndex();
+		new RandomDocuments(212, 150).addTo(index, 400);
+
+		FrozenInvertedIndex frozen = index.freeze();
+		frozen.useBm25(true);
+		return frozen;
+	}
+
+	/**
+	 * The best k results of a pruned search are the first k results of a
+	 * full search
+	 */
+	@Test
+	public void testTopK()
+	{
+		FrozenInvertedIndex index = randomIndex();
+
+		for (Collection<String> query : new RandomDocuments(21, 150).nextQueries(200))
+		{
+			for (boolean exact : new boolean[] { true, false })
+			{
+				List<String> all = RandomDocuments.describe(index.search(query, exact));
+
+				for (int k : new int[] { 1, 3, 10, 50 })
+				{
+					List<String> top = RandomDocuments.describe(index.search(query, exact, k));
+					assertEquals(all.subList(0, Math.min(k, all.size())), top, query + " top " + k);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Pruning skips postings of a common word when a few results are asked for
+	 */
+	@Test
+	public void testPruning()
+	{
+		FrozenInvertedIndex index = randomIndex();
+		List<String> query = List.of(new RandomDocuments(212, 150).nextWord(), "eeeee", "ddddd");
+
+		long before = index.scoredPostings();
+		index.search(query, false);
+		long full = index.scoredPostings() - before;
+
+		before = index.scoredPostings();
+		index.search(query, false, 1);
+		long pruned = index.scoredPostings() - before;
+
+		assertTrue(pruned <= full, pruned + " of " + full);
+	}
+
+	/**
+	 * A conjunctive search scores each location like a search of any word
+	 */
+	@Test
+	public void testConjunctive()
+	{
+		FrozenInvertedIndex index = randomIndex();
+
+		for (Collection<String> query : new RandomDocuments(21, 150).nextQueries(100))
+		{
+			List<String> any = RandomDocuments.describe(index.search(query, true));
+			List<String> all = RandomDocuments.describe(index.conjunctiveSearch(query, true));
+			assertTrue(any.containsAll(all), query.toString());
+			assertEquals(new ArrayList<>(all), all);
+		}
+	}
+}
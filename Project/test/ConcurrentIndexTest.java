@@ -0,0 +1,210 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks that the indexes built from several threads at once end up the
+ * same as an index built from one thread.
+ *
+ * @author hayde
+ */
+public class ConcurrentIndexTest
+{
+	/**
+	 * number of documents added
+	 */
+	private static final int DOCUMENTS = 300;
+
+	/**
+	 * number of threads adding documents
+	 */
+	private static final int THREADS = 4;
+
+	/**
+	 * Returns the same random documents each time it is called, so no two
+	 * indexes share a position list
+	 *
+	 * @return List		positions of each word of each document
+	 */
+	private static List<Map<String, PositionList>> documents()
+	{
+		RandomDocuments random = new RandomDocuments(212, 150);
+		Random lengths = new Random(212);
+		ArrayList<Map<String, PositionList>> documents = new ArrayList<>();
+
+		for (int i = 0; i < DOCUMENTS; i++)
+		{
+			documents.add(random.nextDocument(1 + lengths.nextInt(300)));
+		}
+
+		return documents;
+	}
+
+	/**
+	 * Returns the number of words in a document
+	 *
+	 * @param document		positions of each word
+	 * @return int			position of the last word
+	 */
+	private static int length(Map<String, PositionList> document)
+	{
+		int length = 0;
+
+		for (PositionList positions : document.values())
+		{
+			length = Math.max(length, positions.last());
+		}
+
+		return length;
+	}
+
+	/**
+	 * Adds the documents to an index, every thread adding every
+	 * {@link #THREADS}th document
+	 *
+	 * @param index			index to add to
+	 * @param documents		documents to add
+	 * @param words			whether to add a word at a time instead of a document at a time
+	 * @throws InterruptedException
+	 */
+	private static void addAll(InvertedIndex index, List<Map<String, PositionList>> documents, boolean words) throws InterruptedException
+	{
+		ArrayList<Thread> threads = new ArrayList<>();
+
+		for (int t = 0; t < THREADS; t++)
+		{
+			int first = t;
+
+			threads.add(new Thread(() ->
+			{
+				for (int i = first; i < documents.size(); i += THREADS)
+				{
+					String location = "doc" + i + ".txt";
+					Map<String, PositionList> document = documents.get(i);
+
+					if (words)
+					{
+						document.forEach((word, positions) ->
+						{
+							for (int position : positions)
+							{
+								index.addIndex(word, location, position);
+							}
+						});
+					}
+					else
+					{
+						index.addDocument(location, document, length(document));
+					}
+				}
+			}));
+		}
+
+		for (Thread thread : threads)
+		{
+			thread.start();
+		}
+
+		for (Thread thread : threads)
+		{
+			thread.join();
+		}
+
+		if (index instanceof SegmentedInvertedIndex)
+		{
+			((SegmentedInvertedIndex) index).close();
+		}
+	}
+
+	/**
+	 * Returns the indexes that can be built from several threads, the
+	 * segmented one with small segments so they are sealed and merged
+	 *
+	 * @return List		empty indexes
+	 */
+	private static List<InvertedIndex> indexes()
+	{
+		return List.of(new ThreadSafeInvertedIndex(), new ConcurrentInvertedIndex(),
+				new ShardedInvertedIndex(3), new SegmentedInvertedIndex(200, 2));
+	}
+
+	/**
+	 * Checks that two indexes have the same postings, counts and results
+	 *
+	 * @param expected		index to compare to
+	 * @param actual		index to check
+	 * @param queries		queries to search both with
+	 */
+	private static void assertSameIndex(InvertedIndex expected, InvertedIndex actual, List<Collection<String>> queries)
+	{
+		String name = actual.getClass().getName();
+		assertEquals(RandomDocuments.postings(expected), RandomDocuments.postings(actual), name);
+		assertEquals(expected.getCount(), actual.getCount(), name);
+
+		for (Collection<String> query : queries)
+		{
+			for (boolean exact : new boolean[] { true, false })
+			{
+				assertEquals(RandomDocuments.describe(expected.search(query, exact)),
+						RandomDocuments.describe(actual.search(query, exact)), name + " " + query);
+				assertEquals(RandomDocuments.describe(expected.conjunctiveSearch(query, exact)),
+						RandomDocuments.describe(actual.conjunctiveSearch(query, exact)), name + " " + query);
+			}
+		}
+	}
+
+	/**
+	 * Checks every index after adding the documents from several threads
+	 *
+	 * @param words		whether to add a word at a time instead of a document at a time
+	 * @throws InterruptedException
+	 */
+	private static void checkIndexes(boolean words) throws InterruptedException
+	{
+		InvertedIndex expected = new InvertedIndex();
+		List<Map<String, PositionList>> documents = documents();
+
+		for (int i = 0; i < documents.size(); i++)
+		{
+			expected.addDocument("doc" + i + ".txt", documents.get(i), length(documents.get(i)));
+		}
+
+		FrozenInvertedIndex frozen = expected.freeze();
+		List<Collection<String>> queries = new RandomDocuments(21, 150).nextQueries(100);
+
+		for (InvertedIndex index : indexes())
+		{
+			addAll(index, documents(), words);
+			assertSameIndex(expected, index, queries);
+			assertSameIndex(frozen, index.freeze(), queries);
+		}
+	}
+
+	/**
+	 * Indexes built a document at a time from several threads match
+	 *
+	 * @throws InterruptedException
+	 */
+	@Test
+	public void testDocuments() throws InterruptedException
+	{
+		checkIndexes(false);
+	}
+
+	/**
+	 * Indexes built a word at a time from several threads match
+	 *
+	 * @throws InterruptedException
+	 */
+	@Test
+	public void testWords() throws InterruptedException
+	{
+		checkIndexes(true);
+	}
+}
@@ -0,0 +1,212 @@
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks that an index saved with {@link IndexFile} loads and maps back to
+ * the same index, and that a damaged file is refused with an
+ * {@link IOException}.
+ *
+ * @author hayde
+ */
+public class IndexFileTest
+{
+	/**
+	 * Builds a random index
+	 *
+	 * @param documents			number of documents
+	 * @return InvertedIndex	the index
+	 */
+	private static InvertedIndex randomIndex(int documents)
+	{
+		InvertedIndex index = new InvertedIndex();
+		new RandomDocuments(212, 60).addTo(index, documents);
+		return index;
+	}
+
+	/**
+	 * Checks that two indexes have the same postings, counts and results
+	 *
+	 * @param expected		index to compare to
+	 * @param actual		index to check
+	 * @param queries		queries to search both with
+	 */
+	private static void assertSameIndex(InvertedIndex expected, InvertedIndex actual, List<Collection<String>> queries)
+	{
+		assertEquals(RandomDocuments.postings(expected), RandomDocuments.postings(actual));
+		assertEquals(expected.getCount(), actual.getCount());
+
+		for (Collection<String> query : queries)
+		{
+			for (boolean exact : new boolean[] { true, false })
+			{
+				assertEquals(RandomDocuments.describe(expected.search(query, exact)),
+						RandomDocuments.describe(actual.search(query, exact)), query.toString());
+				assertEquals(RandomDocuments.describe(expected.conjunctiveSearch(query, exact)),
+						RandomDocuments.describe(actual.conjunctiveSearch(query, exact)), query.toString());
+			}
+		}
+	}
+
+	/**
+	 * A saved index loads and maps back to the same index, and saving it
+	 * again gives the same file
+	 *
+	 * @throws IOException
+	 */
+	@Test
+	public void testRoundTrip() throws IOException
+	{
+		InvertedIndex index = randomIndex(200);
+		List<Collection<String>> queries = new RandomDocuments(21, 60).nextQueries(100);
+		Path path = Files.createTempFile("index", ".bin");
+		Path copy = Files.createTempFile("copy", ".bin");
+
+		try
+		{
+			FrozenInvertedIndex frozen = index.freeze();
+			frozen.save(path);
+
+			FrozenInvertedIndex loaded = FrozenInvertedIndex.load(path);
+			assertSameIndex(index, frozen, queries);
+			assertSameIndex(frozen, loaded, queries);
+			assertSameIndex(frozen, new MappedInvertedIndex(path), queries);
+
+			loaded.save(copy);
+			assertArrayEquals(Files.readAllBytes(path), Files.readAllBytes(copy), "saved again");
+		}
+		finally
+		{
+			Files.deleteIfExists(path);
+			Files.deleteIfExists(copy);
+		}
+	}
+
+	/**
+	 * An empty index can be saved and loaded
+	 *
+	 * @throws IOException
+	 */
+	@Test
+	public void testEmpty() throws IOException
+	{
+		Path path = Files.createTempFile("empty", ".bin");
+
+		try
+		{
+			new InvertedIndex().save(path);
+			assertEquals(0, FrozenInvertedIndex.load(path).getCount().size());
+			assertEquals(0, new MappedInvertedIndex(path).getWords().size());
+		}
+		finally
+		{
+			Files.deleteIfExists(path);
+		}
+	}
+
+	/**
+	 * A file that is cut short or is not an index file is refused
+	 *
+	 * @throws IOException
+	 */
+	@Test
+	public void testTruncated() throws IOException
+	{
+		Path path = Files.createTempFile("index", ".bin");
+
+		try
+		{
+			randomIndex(20).save(path);
+			byte[] bytes = Files.readAllBytes(path);
+
+			for (int length : new int[] { 0, 10, IndexFile.HEADER, bytes.length / 2, bytes.length - 1 })
+			{
+				Files.write(path, Arrays.copyOf(bytes, length));
+				assertThrows(IOException.class, () -> FrozenInvertedIndex.load(path));
+				assertThrows(IOException.class, () -> new MappedInvertedIndex(path));
+			}
+
+			bytes[0]++;
+			Files.write(path, bytes);
+			assertThrows(IOException.class, () -> FrozenInvertedIndex.load(path));
+			assertThrows(IOException.class, () -> new MappedInvertedIndex(path));
+		}
+		finally
+		{
+			Files.deleteIfExists(path);
+		}
+	}
+
+	/**
+	 * Changing any number stored in the file either gives an index that
+	 * can be searched or is refused with an {@link IOException}, never
+	 * another exception
+	 *
+	 * @throws IOException
+	 */
+	@Test
+	public void testCorrupt() throws IOException
+	{
+		Path path = Files.createTempFile("index", ".bin");
+		List<Collection<String>> queries = new RandomDocuments(21, 60).nextQueries(10);
+
+		try
+		{
+			randomIndex(10).save(path);
+			byte[] bytes = Files.readAllBytes(path);
+			ByteBuffer header = ByteBuffer.wrap(bytes);
+
+			// the ints end where the word bytes start
+			long ints = IndexFile.HEADER / Integer.BYTES + 2 * (header.getInt(8) + 1L)
+					+ 3L * header.getInt(12) + 1 + 3L * header.getInt(16) + 1;
+
+			for (int i = 0; i < ints; i++)
+			{
+				int original = header.getInt(i * Integer.BYTES);
+
+				for (int value : new int[] { -1, original + 1, Integer.MAX_VALUE })
+				{
+					ByteBuffer corrupt = ByteBuffer.wrap(bytes.clone());
+					corrupt.putInt(i * Integer.BYTES, value);
+					Files.write(path, corrupt.array());
+
+					for (boolean mapped : new boolean[] { false, true })
+					{
+						InvertedIndex index;
+
+						try
+						{
+							index = mapped ? new MappedInvertedIndex(path) : FrozenInvertedIndex.load(path);
+						}
+						catch (IOException e)
+						{
+							continue;
+						}
+
+						for (Collection<String> query : queries)
+						{
+							index.search(query, false);
+							index.conjunctiveSearch(query, true);
+						}
+
+						RandomDocuments.postings(index);
+					}
+				}
+			}
+		}
+		finally
+		{
+			Files.deleteIfExists(path);
+		}
+	}
+}
@@ -0,0 +1,181 @@
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Random;
+import java.util.TreeSet;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks that a {@link PositionList} gives back the positions it was given
+ * after encoding them.
+ *
+ * @author hayde
+ */
+public class PositionListTest
+{
+	/**
+	 * Returns random positions in increasing order, with gaps of every
+	 * encoded length
+	 *
+	 * @param random		source of the gaps
+	 * @param count			number of positions
+	 * @return int[]		the positions
+	 */
+	private static int[] randomPositions(Random random, int count)
+	{
+		int[] positions = new int[count];
+		int position = 0;
+
+		for (int i = 0; i < count; i++)
+		{
+			position += 1 + random.nextInt(1 << (7 * random.nextInt(4)));
+			positions[i] = position;
+		}
+
+		return positions;
+	}
+
+	/**
+	 * Returns a list of positions added one at a time
+	 *
+	 * @param positions			positions to add
+	 * @return PositionList		the list
+	 */
+	private static PositionList listOf(int... positions)
+	{
+		PositionList list = new PositionList();
+
+		for (int position : positions)
+		{
+			list.add(position);
+		}
+
+		return list;
+	}
+
+	/**
+	 * Positions added in order come back in order
+	 */
+	@Test
+	public void testRoundTrip()
+	{
+		Random random = new Random(212);
+
+		for (int i = 0; i < 200; i++)
+		{
+			int[] positions = randomPositions(random, random.nextInt(100));
+			PositionList list = listOf(positions);
+
+			assertEquals(positions.length, list.size());
+			assertArrayEquals(positions, PositionList.toArray(list));
+			assertArrayEquals(positions, PositionList.toArray(new PositionList(positions)));
+		}
+	}
+
+	/**
+	 * Positions at the limits of the encoding come back unchanged
+	 */
+	@Test
+	public void testLarge()
+	{
+		int[] positions = { 1, 127, 128, 16383, 16384, 1 << 28, Integer.MAX_VALUE };
+		assertArrayEquals(positions, PositionList.toArray(listOf(positions)));
+	}
+
+	/**
+	 * Positions added out of order are sorted and duplicates are ignored
+	 */
+	@Test
+	public void testUnordered()
+	{
+		Random random = new Random(212);
+		TreeSet<Integer> expected = new TreeSet<>();
+		PositionList list = new PositionList();
+
+		for (int i = 0; i < 500; i++)
+		{
+			int position = 1 + random.nextInt(300);
+			assertEquals(expected.add(position), list.add(position));
+		}
+
+		assertArrayEquals(expected.stream().mapToInt(Integer::intValue).toArray(), PositionList.toArray(list));
+		assertTrue(list.contains(expected.first()));
+		assertFalse(list.contains(0));
+	}
+
+	/**
+	 * Copied bytes decode to the same positions
+	 */
+	@Test
+	public void testCopy()
+	{
+		Random random = new Random(212);
+		int[] positions = randomPositions(random, 1000);
+		PositionList list = listOf(positions);
+
+		byte[] bytes = new byte[list.encodedLength() + 3];
+		assertEquals(list.encodedLength(), list.copyTo(bytes, 3));
+		assertArrayEquals(positions, PositionList.decode(bytes, 3, positions.length));
+	}
+
+	/**
+	 * Merging two lists gives every position of both once
+	 */
+	@Test
+	public void testMerge()
+	{
+		Random random = new Random(212);
+
+		for (int i = 0; i < 100; i++)
+		{
+			int[] a = randomPositions(random, random.nextInt(50));
+			int[] b = randomPositions(random, random.nextInt(50));
+
+			TreeSet<Integer> expected = new TreeSet<>();
+			for (int position : a)
+			{
+				expected.add(position);
+			}
+			for (int position : b)
+			{
+				expected.add(position);
+			}
+
+			PositionList list = listOf(a);
+			list.addAll(listOf(b));
+			assertArrayEquals(expected.stream().mapToInt(Integer::intValue).toArray(), PositionList.toArray(list));
+		}
+	}
+
+	/**
+	 * Joining a list moved up by an offset gives the moved positions,
+	 * and a list that would overlap is refused
+	 */
+	@Test
+	public void testJoin()
+	{
+		Random random = new Random(212);
+		int[] a = randomPositions(random, 100);
+		int[] b = randomPositions(random, 100);
+		int offset = a[a.length - 1];
+
+		PositionList list = listOf(a);
+		list.addAll(listOf(b), offset);
+
+		int[] expected = new int[a.length + b.length];
+		System.arraycopy(a, 0, expected, 0, a.length);
+
+		for (int i = 0; i < b.length; i++)
+		{
+			expected[a.length + i] = b[i] + offset;
+		}
+
+		assertArrayEquals(expected, PositionList.toArray(list));
+		assertEquals(expected[expected.length - 1], list.last());
+		assertThrows(IllegalArgumentException.class, () -> list.addAll(listOf(1), 0));
+	}
+}
@@ -0,0 +1,177 @@
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * Random documents and queries for the index tests. Words are short and
+ * made of a few letters, so partial queries expand to several words, and
+ * some words are much more common than others.
+ *
+ * @author hayde
+ */
+public class RandomDocuments
+{
+	/**
+	 * letters the words are made of
+	 */
+	private static final String LETTERS = "abcde";
+
+	/**
+	 * source of the documents
+	 */
+	private final Random random;
+
+	/**
+	 * every word the documents use
+	 */
+	private final String[] vocabulary;
+
+	/**
+	 * Initializes random documents
+	 *
+	 * @param seed			seed of the random words
+	 * @param words			number of different words
+	 */
+	public RandomDocuments(long seed, int words)
+	{
+		this.random = new Random(seed);
+		TreeSet<String> vocabulary = new TreeSet<>();
+
+		while (vocabulary.size() < words)
+		{
+			vocabulary.add(word(2 + random.nextInt(5)));
+		}
+
+		this.vocabulary = vocabulary.toArray(new String[0]);
+	}
+
+	/**
+	 * Returns random letters
+	 *
+	 * @param length		number of letters
+	 * @return String		the letters
+	 */
+	private String word(int length)
+	{
+		StringBuilder word = new StringBuilder();
+
+		for (int i = 0; i < length; i++)
+		{
+			word.append(LETTERS.charAt(random.nextInt(LETTERS.length())));
+		}
+
+		return word.toString();
+	}
+
+	/**
+	 * Returns a word of the vocabulary, the first words being the most common
+	 *
+	 * @return String		the word
+	 */
+	public String nextWord()
+	{
+		double skewed = random.nextDouble();
+		return vocabulary[(int) (vocabulary.length * skewed * skewed)];
+	}
+
+	/**
+	 * Returns the positions of each word of a random document
+	 *
+	 * @param length		number of words in the document
+	 * @return Map			positions of each word
+	 */
+	public Map<String, PositionList> nextDocument(int length)
+	{
+		TreeMap<String, PositionList> words = new TreeMap<>();
+
+		for (int position = 1; position <= length; position++)
+		{
+			words.computeIfAbsent(nextWord(), word -> new PositionList()).add(position);
+		}
+
+		return words;
+	}
+
+	/**
+	 * Adds random documents to an index
+	 *
+	 * @param index			index to add to
+	 * @param documents		number of documents
+	 */
+	public void addTo(InvertedIndex index, int documents)
+	{
+		for (int i = 0; i < documents; i++)
+		{
+			int length = 1 + random.nextInt(300);
+			index.addDocument("doc" + i + ".txt", nextDocument(length), length);
+		}
+	}
+
+	/**
+	 * Returns random queries of one to four words, some of them cut short
+	 * to be used as partial queries
+	 *
+	 * @param count			number of queries
+	 * @return List			the queries
+	 */
+	public List<Collection<String>> nextQueries(int count)
+	{
+		ArrayList<Collection<String>> queries = new ArrayList<>();
+
+		for (int i = 0; i < count; i++)
+		{
+			TreeSet<String> query = new TreeSet<>();
+			int words = 1 + random.nextInt(4);
+
+			for (int j = 0; j < words; j++)
+			{
+				String word = random.nextInt(4) == 0 ? word(1 + random.nextInt(3)) : nextWord();
+				query.add(word);
+			}
+
+			queries.add(query);
+		}
+
+		return queries;
+	}
+
+	/**
+	 * Returns the results of a search in a form that can be compared
+	 *
+	 * @param results		results of a search
+	 * @return List			location, count and score of each result in order
+	 */
+	public static List<String> describe(List<InvertedIndex.Result> results)
+	{
+		ArrayList<String> described = new ArrayList<>();
+
+		for (InvertedIndex.Result result : results)
+		{
+			described.add(result.getWhere() + " " + result.getCount() + " " + result.getScore());
+		}
+
+		return described;
+	}
+
+	/**
+	 * Returns every posting of an index in a form that can be compared
+	 *
+	 * @param index			index to read
+	 * @return TreeMap		positions of each word at each location
+	 */
+	public static TreeMap<String, TreeMap<String, List<Integer>>> postings(InvertedIndex index)
+	{
+		TreeMap<String, TreeMap<String, List<Integer>>> postings = new TreeMap<>();
+
+		index.forEachPosting((word, location, positions) ->
+		{
+			postings.computeIfAbsent(word, key -> new TreeMap<>()).put(location, new ArrayList<>(positions));
+		});
+
+		return postings;
+	}
+}
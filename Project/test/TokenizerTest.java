@@ -0,0 +1,240 @@
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks that {@link Tokenizer} and {@link ByteTokenizer} split text in to
+ * the same words as cleaning and splitting it with {@link TextParser}.
+ *
+ * @author hayde
+ */
+public class TokenizerTest
+{
+	/**
+	 * text with punctuation, digits, diacritics, other scripts and every
+	 * kind of whitespace
+	 */
+	private static final String[] SAMPLES = {
+			"",
+			"   \t  ",
+			"Hello, World!",
+			"  leading and trailing  ",
+			"apostrophe's and hy-phen-ated words",
+			"numbers 123 and under_scores 4th",
+			"naïve café ÜBER straße façade",
+			"tabs\tand\nnew\r\nlines\u000Band\ffeeds",
+			"no break em　ideographic line",
+			"ǅungla ﬁne İstanbul ΣΊΣΥΦΟΣ",
+			"日本語 テキスト 한국어",
+			"é combining ä marks",
+			"emoji 😀 between words",
+	};
+
+	/**
+	 * characters random text is made of
+	 */
+	private static final String CHARACTERS = "abcXYZ09 .,'-_\t\n\r  éßİıǅﬁ́Σ日😀";
+
+	/**
+	 * Returns the words of text cleaned and split by {@link TextParser}
+	 *
+	 * @param text			text to split
+	 * @return String[]		the words
+	 */
+	private static String[] expected(String text)
+	{
+		return TextParser.split(TextParser.clean(text));
+	}
+
+	/**
+	 * Returns the words of text split by a {@link Tokenizer}
+	 *
+	 * @param text			text to split
+	 * @return String[]		the words
+	 */
+	private static String[] tokenize(String text)
+	{
+		ArrayList<String> words = new ArrayList<>();
+		Tokenizer tokenizer = new Tokenizer().reset(text);
+
+		while (tokenizer.next())
+		{
+			words.add(tokenizer.token().toString());
+		}
+
+		return words.toArray(new String[0]);
+	}
+
+	/**
+	 * Returns the words of text read a line at a time, which is how
+	 * files are read when they are not mapped
+	 *
+	 * @param text			text to split
+	 * @return String[]		the words
+	 * @throws IOException
+	 */
+	private static String[] expectedLines(String text) throws IOException
+	{
+		ArrayList<String> words = new ArrayList<>();
+
+		try (BufferedReader reader = new BufferedReader(new StringReader(text)))
+		{
+			String line;
+
+			while ((line = reader.readLine()) != null)
+			{
+				words.addAll(List.of(expected(line)));
+			}
+		}
+
+		return words.toArray(new String[0]);
+	}
+
+	/**
+	 * Returns the words of a range of UTF-8 bytes split by a {@link ByteTokenizer}
+	 *
+	 * @param tokenizer		tokenizer to use
+	 * @param bytes			bytes to split
+	 * @param start			index of the first byte
+	 * @param end			index after the last byte
+	 * @param words			list the words are added to
+	 * @throws IOException
+	 */
+	private static void tokenize(ByteTokenizer tokenizer, ByteBuffer bytes, int start, int end, List<String> words) throws IOException
+	{
+		tokenizer.reset(bytes, start, end);
+
+		while (tokenizer.next())
+		{
+			words.add(tokenizer.token().toString());
+		}
+	}
+
+	/**
+	 * Returns random text
+	 *
+	 * @param random		source of the characters
+	 * @param length		number of characters
+	 * @return String		the text
+	 */
+	private static String randomText(Random random, int length)
+	{
+		StringBuilder text = new StringBuilder();
+
+		while (text.length() < length)
+		{
+			char c = CHARACTERS.charAt(random.nextInt(CHARACTERS.length()));
+
+			// keep surrogate pairs together
+			if (Character.isHighSurrogate(c))
+			{
+				text.append(c).append('\uDE00');
+			}
+			else if (!Character.isLowSurrogate(c))
+			{
+				text.append(c);
+			}
+		}
+
+		return text.toString();
+	}
+
+	/**
+	 * The tokenizer gives the same words as cleaning and splitting
+	 */
+	@Test
+	public void testSamples()
+	{
+		for (String sample : SAMPLES)
+		{
+			assertArrayEquals(expected(sample), tokenize(sample), sample);
+			assertArrayEquals(expected(sample), TextParser.parse(sample), sample);
+		}
+	}
+
+	/**
+	 * The tokenizer gives the same words for random text
+	 */
+	@Test
+	public void testRandom()
+	{
+		Random random = new Random(212);
+
+		for (int i = 0; i < 2000; i++)
+		{
+			String text = randomText(random, random.nextInt(80));
+			assertArrayEquals(expected(text), tokenize(text), text);
+		}
+	}
+
+	/**
+	 * The byte tokenizer gives the same words as reading the lines
+	 *
+	 * @throws IOException
+	 */
+	@Test
+	public void testBytes() throws IOException
+	{
+		Random random = new Random(212);
+		ByteTokenizer tokenizer = new ByteTokenizer();
+		ArrayList<String> texts = new ArrayList<>(List.of(SAMPLES));
+		texts.add(String.join("\n", SAMPLES));
+
+		for (int i = 0; i < 500; i++)
+		{
+			texts.add(randomText(random, random.nextInt(200)));
+		}
+
+		for (String text : texts)
+		{
+			byte[] encoded = text.getBytes(StandardCharsets.UTF_8);
+			ArrayList<String> words = new ArrayList<>();
+			tokenize(tokenizer, ByteBuffer.wrap(encoded), 0, encoded.length, words);
+			assertArrayEquals(expectedLines(text), words.toArray(new String[0]), text);
+		}
+	}
+
+	/**
+	 * Splitting bytes at the last line break of a range gives the same
+	 * words as reading all of them at once
+	 *
+	 * @throws IOException
+	 */
+	@Test
+	public void testBreaks() throws IOException
+	{
+		Random random = new Random(212);
+		ByteTokenizer tokenizer = new ByteTokenizer();
+
+		for (int i = 0; i < 500; i++)
+		{
+			String text = randomText(random, 200);
+			byte[] encoded = text.getBytes(StandardCharsets.UTF_8);
+			ByteBuffer bytes = ByteBuffer.wrap(encoded);
+			int cut = ByteTokenizer.lastBreak(bytes, 0, random.nextInt(encoded.length));
+
+			// only a break at a line break keeps the words of every line the same
+			if (cut < 0 || (encoded[cut - 1] != '\n' && encoded[cut - 1] != '\r'))
+			{
+				continue;
+			}
+
+			ArrayList<String> words = new ArrayList<>();
+			tokenize(tokenizer, bytes, 0, cut, words);
+			tokenize(tokenizer, bytes, cut, encoded.length, words);
+
+			ArrayList<String> whole = new ArrayList<>();
+			tokenize(tokenizer, bytes, 0, encoded.length, whole);
+			assertArrayEquals(whole.toArray(new String[0]), words.toArray(new String[0]), text);
+		}
+	}
+}